@@ -0,0 +1,4 @@
+# Promise通过ServiceLoader加载主线程派发器, 混淆时需要保留实现类及其无参构造函数
+-keep class cn.yerl.android.promise.android.AndroidMainDispatcher {
+    public <init>();
+}
@@ -0,0 +1,25 @@
+package cn.yerl.android.promise.android;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import cn.yerl.android.promise.core.MainDispatcher;
+
+/**
+ * Android主线程派发器, 通过ServiceLoader自动注册
+ * Created by Alan Yeh on 2017/9/19.
+ */
+public class AndroidMainDispatcher implements MainDispatcher {
+    /// 用于返回主线程
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void post(Runnable task) {
+        handler.post(task);
+    }
+
+    @Override
+    public boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+}
@@ -0,0 +1,35 @@
+package cn.yerl.android.promise.benchmarks;
+
+import java.util.concurrent.CountDownLatch;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseResolver;
+
+/**
+ * 等待Promise结束
+ * Created by Alan Yeh on 2017/9/20.
+ */
+final class Await {
+    private Await(){
+    }
+
+    static <R> R await(Promise<R> promise){
+        final CountDownLatch latch = new CountDownLatch(1);
+        promise.pipe(new PromiseResolver<R>() {
+            @Override
+            public void resolve(R result, RuntimeException error) {
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        if (promise.getError() != null){
+            throw promise.getError();
+        }
+        return promise.getResult();
+    }
+}
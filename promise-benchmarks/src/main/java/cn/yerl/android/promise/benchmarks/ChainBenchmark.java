@@ -0,0 +1,83 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseCallback;
+
+/**
+ * 由then/thenAsync组成的执行链
+ * fusionDepth为0时每一步都会派发, 用于对比同一调度器上连续的步骤直接执行的效果
+ * Created by Alan Yeh on 2017/9/20.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChainBenchmark {
+    private static final PromiseCallback<Object, Integer> ROOT = new PromiseCallback<Object, Integer>() {
+        @Override
+        public Integer call(Object arg) {
+            return 0;
+        }
+    };
+
+    private static final PromiseCallback<Integer, Integer> INCREASE = new PromiseCallback<Integer, Integer>() {
+        @Override
+        public Integer call(Integer arg) {
+            return arg + 1;
+        }
+    };
+
+    @Param({"10", "100", "1000"})
+    public int length;
+
+    @Param({"0", "16"})
+    public int fusionDepth;
+
+    private int defaultFusionDepth;
+
+    @Setup
+    public void setup(){
+        defaultFusionDepth = Promise.getMaxFusionDepth();
+        Promise.setMaxFusionDepth(fusionDepth);
+    }
+
+    @TearDown
+    public void tearDown(){
+        Promise.setMaxFusionDepth(defaultFusionDepth);
+    }
+
+    @Benchmark
+    public Integer then(){
+        Promise<Integer> promise = new Promise<>(ROOT);
+        for (int i = 0; i < length; i ++){
+            promise = promise.then(INCREASE);
+        }
+        return Await.await(promise);
+    }
+
+    @Benchmark
+    public Integer thenAsync(){
+        Promise<Integer> promise = new Promise<>(ROOT);
+        for (int i = 0; i < length; i ++){
+            promise = promise.thenAsync(INCREASE);
+        }
+        return Await.await(promise);
+    }
+}
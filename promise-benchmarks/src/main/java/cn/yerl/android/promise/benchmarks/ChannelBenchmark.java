@@ -0,0 +1,54 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseChannel;
+
+/**
+ * PromiseChannel
+ * 单线程交替send/receive, 测量缓冲区未满时的快速路径以及缓冲区满时发送者排队的开销
+ * Created by Alan Yeh on 2017/9/29.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChannelBenchmark {
+    @Param({"1", "16"})
+    public int batch;
+
+    private PromiseChannel<Integer> channel;
+
+    @Setup
+    public void setup(){
+        channel = new PromiseChannel<>(8);
+    }
+
+    @Benchmark
+    public Object sendReceive(){
+        Promise<Void> sent = null;
+        for (int i = 0; i < batch; i ++){
+            sent = channel.send(i);
+        }
+        Object last = null;
+        for (int i = 0; i < batch; i ++){
+            last = channel.receive().getResult();
+        }
+        return sent.getState() == Promise.State.Fulfilled ? last : null;
+    }
+}
@@ -0,0 +1,60 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseCallbackWithResolver;
+import cn.yerl.android.promise.core.PromiseResolver;
+
+/**
+ * Promise.all/Promise.race并发多个Promise
+ * Created by Alan Yeh on 2017/9/20.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CombinatorBenchmark {
+    private static final PromiseCallbackWithResolver<Object, Integer> RESOLVER = new PromiseCallbackWithResolver<Object, Integer>() {
+        @Override
+        public void call(Object arg, PromiseResolver<Integer> resolver) {
+            resolver.resolve(1, null);
+        }
+    };
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private List<Promise<Integer>> promises(){
+        List<Promise<Integer>> promises = new ArrayList<>(size);
+        for (int i = 0; i < size; i ++){
+            promises.add(new Promise<>(RESOLVER));
+        }
+        return promises;
+    }
+
+    @Benchmark
+    public List<Integer> all(){
+        return Await.await(Promise.all(promises()));
+    }
+
+    @Benchmark
+    public Integer race(){
+        return Await.await(Promise.race(promises()));
+    }
+}
@@ -0,0 +1,62 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseCallback;
+
+/**
+ * thenDelay调度
+ * 同时挂起count个延迟任务, 测量调度与唤醒的开销
+ * Created by Alan Yeh on 2017/9/20.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DelayBenchmark {
+    private static final PromiseCallback<Object, Integer> ROOT = new PromiseCallback<Object, Integer>() {
+        @Override
+        public Integer call(Object arg) {
+            return 0;
+        }
+    };
+
+    private static final PromiseCallback<Integer, Integer> INCREASE = new PromiseCallback<Integer, Integer>() {
+        @Override
+        public Integer call(Integer arg) {
+            return arg + 1;
+        }
+    };
+
+    @Param({"0", "1"})
+    public long delayMillis;
+
+    @Param({"1", "100"})
+    public int count;
+
+    @Benchmark
+    public List<Integer> thenDelay(){
+        Promise<Integer> root = new Promise<>(ROOT);
+        List<Promise<Integer>> promises = new ArrayList<>(count);
+        for (int i = 0; i < count; i ++){
+            promises.add(root.thenDelay(delayMillis, INCREASE));
+        }
+        return Await.await(Promise.all(promises));
+    }
+}
@@ -0,0 +1,52 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseCallback;
+
+/**
+ * error错误恢复
+ * Created by Alan Yeh on 2017/9/20.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorBenchmark {
+    /// 预先创建异常, 避免测量填充异常栈的开销
+    private static final RuntimeException ERROR = new RuntimeException("benchmark");
+
+    private static final PromiseCallback<Object, Integer> THROW = new PromiseCallback<Object, Integer>() {
+        @Override
+        public Integer call(Object arg) {
+            throw ERROR;
+        }
+    };
+
+    private static final PromiseCallback<RuntimeException, Integer> RECOVER = new PromiseCallback<RuntimeException, Integer>() {
+        @Override
+        public Integer call(RuntimeException arg) {
+            return 1;
+        }
+    };
+
+    @Benchmark
+    public Integer rejected(){
+        return Await.await(new Promise<Integer>(ERROR).error(RECOVER));
+    }
+
+    @Benchmark
+    public Integer thrown(){
+        return Await.await(new Promise<>(THROW).error(RECOVER));
+    }
+}
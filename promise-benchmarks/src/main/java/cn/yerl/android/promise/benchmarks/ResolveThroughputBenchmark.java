@@ -0,0 +1,143 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseCallbackWithResolver;
+import cn.yerl.android.promise.core.PromiseResolver;
+import cn.yerl.android.promise.core.Scheduler;
+import cn.yerl.android.promise.core.Schedulers;
+
+/**
+ * 多个线程同时结束Promise的吞吐量
+ * 构造函数在当前线程中直接执行, 只测量结算(resolve)以及通知监听者的开销
+ * threadsN中每个线程结算各自的Promise, 没有竞争; sharedN中所有线程同时向同一个Promise拼接监听者,
+ * 每个线程每拼接SETTLE_EVERY次就结算并替换这个Promise, 测量监听者栈、观察者计数和结算之间的竞争
+ * Created by Alan Yeh on 2017/9/20.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolveThroughputBenchmark {
+    private static final PromiseResolver<Integer> LISTENER = new PromiseResolver<Integer>() {
+        @Override
+        public void resolve(Integer result, RuntimeException error) {
+        }
+    };
+
+    /// sharedN中每个线程每拼接多少次结算一次共享的Promise
+    private static final int SETTLE_EVERY = 16;
+
+    private Scheduler scheduler;
+    private final AtomicReference<Pending> shared = new AtomicReference<>();
+
+    @Setup(Level.Trial)
+    public void setup(){
+        scheduler = Promise.getDefaultScheduler();
+        Promise.setDefaultScheduler(Schedulers.immediate());
+        shared.set(new Pending());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        Promise.setDefaultScheduler(scheduler);
+    }
+
+    private static final class Capture implements PromiseCallbackWithResolver<Object, Integer> {
+        PromiseResolver<Integer> resolver;
+
+        @Override
+        public void call(Object arg, PromiseResolver<Integer> resolver) {
+            this.resolver = resolver;
+        }
+    }
+
+    /**
+     * 还没有结束的Promise以及结束它的resolver
+     */
+    private static final class Pending {
+        final Promise<Integer> promise;
+        final PromiseResolver<Integer> resolver;
+
+        Pending(){
+            Capture capture = new Capture();
+            this.promise = new Promise<>(capture);
+            this.resolver = capture.resolver;
+        }
+    }
+
+    /**
+     * 每个线程拼接的次数
+     */
+    @State(Scope.Thread)
+    public static class Counter {
+        int count;
+    }
+
+    private Promise.State listenShared(Counter counter){
+        Pending pending = shared.get();
+        pending.promise.pipe(LISTENER);
+        if (++ counter.count % SETTLE_EVERY == 0){
+            //多个线程可能同时结算同一个Promise, 只有第一次会生效
+            shared.compareAndSet(pending, new Pending());
+            pending.resolver.resolve(1, null);
+        }
+        return pending.promise.getState();
+    }
+
+    private static Promise.State resolve(){
+        Capture capture = new Capture();
+        Promise<Integer> promise = new Promise<>(capture);
+        promise.pipe(LISTENER);
+        capture.resolver.resolve(1, null);
+        return promise.getState();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Promise.State threads1(){
+        return resolve();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Promise.State threads4(){
+        return resolve();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Promise.State threads16(){
+        return resolve();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Promise.State shared4(Counter counter){
+        return listenShared(counter);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Promise.State shared16(Counter counter){
+        return listenShared(counter);
+    }
+}
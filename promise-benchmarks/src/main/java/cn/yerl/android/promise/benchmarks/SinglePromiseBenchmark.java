@@ -0,0 +1,56 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseCallback;
+import cn.yerl.android.promise.core.PromiseCallbackWithResolver;
+import cn.yerl.android.promise.core.PromiseResolver;
+
+/**
+ * 创建并结束单个Promise
+ * Created by Alan Yeh on 2017/9/20.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SinglePromiseBenchmark {
+    private static final PromiseCallbackWithResolver<Object, Integer> RESOLVER = new PromiseCallbackWithResolver<Object, Integer>() {
+        @Override
+        public void call(Object arg, PromiseResolver<Integer> resolver) {
+            resolver.resolve(1, null);
+        }
+    };
+
+    private static final PromiseCallback<Object, Integer> CALLBACK = new PromiseCallback<Object, Integer>() {
+        @Override
+        public Integer call(Object arg) {
+            return 1;
+        }
+    };
+
+    @Benchmark
+    public Integer resolver(){
+        return Await.await(new Promise<>(RESOLVER));
+    }
+
+    @Benchmark
+    public Integer callback(){
+        return Await.await(new Promise<Integer>(CALLBACK));
+    }
+
+    @Benchmark
+    public Integer resolved(){
+        return Await.await(Promise.resolved(1));
+    }
+}
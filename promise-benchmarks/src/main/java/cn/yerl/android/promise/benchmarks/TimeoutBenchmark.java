@@ -0,0 +1,71 @@
+package cn.yerl.android.promise.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cn.yerl.android.promise.core.Promise;
+import cn.yerl.android.promise.core.PromiseCallbackWithResolver;
+import cn.yerl.android.promise.core.PromiseResolver;
+import cn.yerl.android.promise.core.Scheduler;
+import cn.yerl.android.promise.core.Schedulers;
+
+/**
+ * timeout
+ * 同时挂起count个超时, 然后全部在超时之前结束, 测量定时器添加与取消的开销
+ * Created by Alan Yeh on 2017/9/25.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeoutBenchmark {
+    @Param({"1", "100", "10000"})
+    public int count;
+
+    private Scheduler scheduler;
+
+    @Setup
+    public void setup(){
+        scheduler = Promise.getDefaultScheduler();
+        Promise.setDefaultScheduler(Schedulers.immediate());
+    }
+
+    @TearDown
+    public void tearDown(){
+        Promise.setDefaultScheduler(scheduler);
+    }
+
+    @Benchmark
+    public List<Integer> timeout(){
+        final List<PromiseResolver<Integer>> resolvers = new ArrayList<>(count);
+        List<Promise<Integer>> promises = new ArrayList<>(count);
+        for (int i = 0; i < count; i ++){
+            promises.add(new Promise<>(new PromiseCallbackWithResolver<Object, Integer>() {
+                @Override
+                public void call(Object arg, PromiseResolver<Integer> resolver) {
+                    resolvers.add(resolver);
+                }
+            }).timeout(60000));
+        }
+        for (int i = 0; i < count; i ++){
+            resolvers.get(i).resolve(i, null);
+        }
+        return Await.await(Promise.all(promises));
+    }
+}
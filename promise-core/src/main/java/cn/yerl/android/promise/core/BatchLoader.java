@@ -0,0 +1,287 @@
+package cn.yerl.android.promise.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 批量加载
+ * 将一段时间内(默认为调度器的一次派发, 也可以设置一个时间窗口)通过load请求的key收集起来, 去重之后只调用一次批量加载的回调,
+ * 再把结果分发给每一个调用者的Promise, 把N次请求合并为一次.
+ * 批量加载的回调返回的List必须与传入的key一一对应; 如果某一项是RuntimeException, 则对应的Promise以该异常结束.
+ * 默认会缓存每一个key的Promise, 失败或被取消的Promise不会被缓存.
+ * 缓存没有数量上限, 也不会过期, 与BatchLoader的生命周期相同: 适合在一次请求或一个页面内使用的BatchLoader;
+ * 长期存在的BatchLoader需要通过clear、clearAll自行清理, 或者关闭缓存并改用PromiseCache.
+ * @param <K> key类型
+ * @param <V> 返回值类型
+ * Created by Alan Yeh on 2017/9/30.
+ */
+public final class BatchLoader<K, V> {
+    private final PromiseCallback<List<K>, Promise<List<V>>> batchFunction;
+    private final ConcurrentMap<K, Promise<V>> cache = new ConcurrentHashMap<>();
+
+    private volatile long batchWindowMillis;
+    private volatile int maxBatchSize = Integer.MAX_VALUE;
+    private volatile boolean cacheEnabled = true;
+    private volatile Scheduler scheduler;
+
+    /// 正在收集key的批次, 由this保护
+    private Batch current;
+
+    /**
+     * @param batchFunction 批量加载的回调, 返回的List必须与传入的key一一对应
+     */
+    public BatchLoader(PromiseCallback<List<K>, Promise<List<V>>> batchFunction){
+        if (batchFunction == null){
+            throw new IllegalArgumentException("batchFunction不能为空");
+        }
+        this.batchFunction = batchFunction;
+    }
+
+    /**
+     * 设置收集key的时间窗口, 为0时只收集调度器一次派发之内的key
+     * @param millis 时间窗口，毫秒
+     * @return BatchLoader
+     */
+    public BatchLoader<K, V> setBatchWindow(long millis){
+        if (millis < 0){
+            throw new IllegalArgumentException("millis不能小于0");
+        }
+        this.batchWindowMillis = millis;
+        return this;
+    }
+
+    /**
+     * 设置每一批的最大数量, 达到之后立即加载
+     * @param maxBatchSize 最大数量
+     * @return BatchLoader
+     */
+    public BatchLoader<K, V> setMaxBatchSize(int maxBatchSize){
+        if (maxBatchSize <= 0){
+            throw new IllegalArgumentException("maxBatchSize必须大于0");
+        }
+        this.maxBatchSize = maxBatchSize;
+        return this;
+    }
+
+    /**
+     * 设置是否缓存每一个key的Promise, 缓存没有数量上限, 需要通过clear、clearAll清理
+     * @param cacheEnabled 是否缓存
+     * @return BatchLoader
+     */
+    public BatchLoader<K, V> setCacheEnabled(boolean cacheEnabled){
+        this.cacheEnabled = cacheEnabled;
+        if (!cacheEnabled){
+            cache.clear();
+        }
+        return this;
+    }
+
+    /**
+     * 设置调用批量加载回调的调度器, 默认使用Promise的默认调度器
+     * @param scheduler 调度器
+     * @return BatchLoader
+     */
+    public BatchLoader<K, V> setScheduler(Scheduler scheduler){
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    /**
+     * 加载
+     * 每次调用都返回独立的Promise, 取消时不会影响同一个key的其它调用者, 所有调用者都取消之后才会放弃这个key
+     * @param key key
+     * @return Promise
+     */
+    public Promise<V> load(K key){
+        if (key == null){
+            throw new IllegalArgumentException("key不能为空");
+        }
+        boolean cacheEnabled = this.cacheEnabled;
+        if (cacheEnabled){
+            Promise<V> cached = cache.get(key);
+            if (cached != null && !cached.isCancelled()){
+                return cached.derive();
+            }
+        }
+
+        Batch batch;
+        Promise<V> promise;
+        Promise<V> derived;
+        boolean created = false;
+        boolean full = false;
+        synchronized (this){
+            if (cacheEnabled){
+                Promise<V> cached = cache.get(key);
+                if (cached != null && !cached.isCancelled()){
+                    return cached.derive();
+                }
+            }
+            if (current == null){
+                current = new Batch();
+                created = true;
+            }
+            batch = current;
+            promise = batch.promises.get(key);
+            if (promise == null || promise.isCancelled()){
+                promise = new Promise<>(Promise.State.Pending);
+                batch.promises.put(key, promise);
+                if (cacheEnabled){
+                    cache.put(key, promise);
+                }
+            }
+            //在锁内拼接, 避免其它调用者在这之前取消而放弃了这个key
+            derived = promise.derive();
+            if (batch.promises.size() >= maxBatchSize){
+                current = null;
+                full = true;
+            }
+        }
+
+        if (full){
+            dispatch(batch);
+        }else if (created){
+            schedule(batch);
+        }
+        return derived;
+    }
+
+    /**
+     * 加载多个key
+     * @param keys keys
+     * @return 与keys一一对应的结果
+     */
+    public Promise<List<V>> loadMany(List<K> keys){
+        List<Promise<V>> promises = new ArrayList<>(keys.size());
+        for (K key : keys){
+            promises.add(load(key));
+        }
+        return Promise.all(promises);
+    }
+
+    /**
+     * 预先放入缓存
+     * @param key key
+     * @param value 值
+     * @return BatchLoader
+     */
+    public BatchLoader<K, V> prime(K key, V value){
+        if (cacheEnabled){
+            cache.put(key, Promise.resolved(value));
+        }
+        return this;
+    }
+
+    /**
+     * 清除某个key的缓存
+     * @param key key
+     * @return BatchLoader
+     */
+    public BatchLoader<K, V> clear(K key){
+        cache.remove(key);
+        return this;
+    }
+
+    /**
+     * 清除所有缓存
+     * @return BatchLoader
+     */
+    public BatchLoader<K, V> clearAll(){
+        cache.clear();
+        return this;
+    }
+
+    private Scheduler getScheduler(){
+        Scheduler scheduler = this.scheduler;
+        return scheduler != null ? scheduler : Promise.getDefaultScheduler();
+    }
+
+    /**
+     * 等待时间窗口(或调度器的下一次派发)之后加载
+     */
+    private void schedule(final Batch batch){
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                dispatch(batch);
+            }
+        };
+        long window = batchWindowMillis;
+        if (window > 0){
+            Promise.executeDelayed(getScheduler(), task, window);
+        }else {
+            getScheduler().execute(task);
+        }
+    }
+
+    /**
+     * 调用批量加载的回调, 并把结果分发给每一个Promise
+     */
+    private void dispatch(Batch batch){
+        synchronized (this){
+            if (batch.dispatched){
+                return;
+            }
+            batch.dispatched = true;
+            if (current == batch){
+                current = null;
+            }
+        }
+
+        //所有调用者都已经取消的key不再加载
+        final List<K> keys = new ArrayList<>(batch.promises.size());
+        final List<Promise<V>> promises = new ArrayList<>(batch.promises.size());
+        for (Map.Entry<K, Promise<V>> entry : batch.promises.entrySet()){
+            Promise<V> promise = entry.getValue();
+            if (promise.isCancelled()){
+                cache.remove(entry.getKey(), promise);
+            }else {
+                keys.add(entry.getKey());
+                promises.add(promise);
+            }
+        }
+        if (keys.isEmpty()){
+            return;
+        }
+
+        Promise<List<V>> values;
+        try {
+            values = batchFunction.call(keys);
+        }catch (RuntimeException ex){
+            values = Promise.rejected(ex);
+        }
+        if (values == null){
+            values = Promise.rejected(new IllegalStateException("batchFunction不能返回null"));
+        }
+        values.pipe(new PromiseResolver<List<V>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void resolve(List<V> result, RuntimeException error) {
+                if (error == null && (result == null || result.size() != keys.size())){
+                    error = new IllegalStateException("batchFunction返回的数量与key的数量不一致");
+                }
+                for (int i = 0; i < keys.size(); i ++){
+                    Promise<V> promise = promises.get(i);
+                    Object value = error == null ? result.get(i) : error;
+                    if (value instanceof RuntimeException){
+                        cache.remove(keys.get(i), promise);
+                        promise.settle(null, (RuntimeException) value);
+                    }else {
+                        promise.settle((V) value, null);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 一批key, 保持请求的顺序并去重
+     */
+    private final class Batch {
+        private final Map<K, Promise<V>> promises = new LinkedHashMap<>();
+        private boolean dispatched;
+    }
+}
@@ -0,0 +1,73 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 取消令牌
+ * 通过Promise.withToken与Promise绑定, 令牌被取消时, 绑定的Promise都会被取消;
+ * 绑定的Promise被取消时, 令牌也会被取消. 耗时的回调可以在执行过程中检查令牌, 提前结束.
+ * Created by Alan Yeh on 2017/9/26.
+ */
+public final class CancellationToken {
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final Queue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 取消
+     * 在当前线程中执行所有已注册的回调
+     * @return 是否由本次调用取消
+     */
+    public boolean cancel(){
+        if (!cancelled.compareAndSet(false, true)){
+            return false;
+        }
+        Runnable callback;
+        while ((callback = callbacks.poll()) != null){
+            callback.run();
+        }
+        return true;
+    }
+
+    /**
+     * 是否已被取消
+     * @return 是否已被取消
+     */
+    public boolean isCancelled(){
+        return cancelled.get();
+    }
+
+    /**
+     * 如果已被取消, 则抛出CancellationException
+     */
+    public void throwIfCancelled(){
+        if (cancelled.get()){
+            throw new CancellationException("token was cancelled");
+        }
+    }
+
+    /**
+     * 注册取消时的回调, 如果已被取消, 则直接执行
+     * @param callback 回调
+     */
+    public void register(Runnable callback){
+        if (callback == null){
+            throw new IllegalArgumentException("callback不能为空");
+        }
+        callbacks.add(callback);
+        //取消时可能已经取完了回调, 此时由注册者自己执行
+        if (cancelled.get() && callbacks.remove(callback)){
+            callback.run();
+        }
+    }
+
+    /**
+     * 移除回调
+     * @param callback 回调
+     */
+    public void unregister(Runnable callback){
+        callbacks.remove(callback);
+    }
+}
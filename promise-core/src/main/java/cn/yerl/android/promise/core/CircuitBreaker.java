@@ -0,0 +1,377 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 熔断器
+ * 在最近windowSize次调用中统计失败率和慢调用率, 任意一个超过阈值时打开熔断器, 之后的调用直接以CircuitBreakerOpenException失败,
+ * 不再占用线程和连接. 打开openDuration之后进入半开状态, 放行halfOpenCalls次调用作为探测:
+ * 探测的失败率和慢调用率都低于阈值时关闭熔断器, 否则重新打开; 探测在maxHalfOpenDuration之内没有全部结束时同样重新打开.
+ * 被取消的调用不计入统计.
+ * Created by Alan Yeh on 2017/10/10.
+ */
+public final class CircuitBreaker {
+    public enum State {
+        /**
+         * 正常放行
+         */
+        Closed,
+        /**
+         * 直接拒绝
+         */
+        Open,
+        /**
+         * 放行少量调用作为探测
+         */
+        HalfOpen
+    }
+
+    private static final int SUCCESS = 0;
+    private static final int FAILURE = 1;
+    private static final int SLOW = 2;
+
+    private final String name;
+    private final CircuitBreakerOpenException openException;
+
+    private float failureRateThreshold = 0.5f;
+    private float slowCallRateThreshold = 1f;
+    private long slowCallNanos = TimeUnit.SECONDS.toNanos(5);
+    private int minimumCalls = 10;
+    private long openNanos = TimeUnit.SECONDS.toNanos(30);
+    private int halfOpenCalls = 3;
+    private long maxHalfOpenNanos = TimeUnit.SECONDS.toNanos(30);
+    private PromiseCallback<RuntimeException, Boolean> recordFailure;
+
+    /// 以下字段由this保护
+    private State state = State.Closed;
+    /// 每次状态变化时加1, 用于忽略变化之前发出的调用的结果
+    private int generation;
+    private long openedAt;
+    private long halfOpenedAt;
+    private byte[] window = new byte[100];
+    private int windowIndex;
+    private int windowCount;
+    private int failureCount;
+    private int slowCount;
+    /// 半开状态下已经放行的探测次数
+    private int halfOpenPermitted;
+
+    /**
+     * @param name 名字, 用于区分不同的熔断器
+     */
+    public CircuitBreaker(String name){
+        this.name = name;
+        this.openException = new CircuitBreakerOpenException(name);
+    }
+
+    /**
+     * 设置失败率阈值, 失败率达到阈值时打开
+     * @param threshold 大于0且不大于1
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setFailureRateThreshold(float threshold){
+        checkRate(threshold);
+        this.failureRateThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * 设置慢调用率阈值, 默认为1, 即只有全部都是慢调用时才打开
+     * @param threshold 大于0且不大于1
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setSlowCallRateThreshold(float threshold){
+        checkRate(threshold);
+        this.slowCallRateThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * 设置慢调用的耗时
+     * @param millis 超过该耗时的调用视为慢调用，毫秒
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setSlowCallDuration(long millis){
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * 设置滑动窗口的大小, 会清空当前的统计
+     * @param windowSize 最近的调用次数
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setWindowSize(int windowSize){
+        if (windowSize <= 0){
+            throw new IllegalArgumentException("windowSize必须大于0");
+        }
+        this.window = new byte[windowSize];
+        resetWindow();
+        return this;
+    }
+
+    /**
+     * 设置计算失败率所需的最少调用次数
+     * @param minimumCalls 最少调用次数
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setMinimumCalls(int minimumCalls){
+        if (minimumCalls <= 0){
+            throw new IllegalArgumentException("minimumCalls必须大于0");
+        }
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * 设置打开之后多久进入半开状态
+     * @param millis 打开的时间，毫秒
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setOpenDuration(long millis){
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * 设置半开状态下放行的探测次数
+     * @param halfOpenCalls 探测次数
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setHalfOpenCalls(int halfOpenCalls){
+        if (halfOpenCalls <= 0){
+            throw new IllegalArgumentException("halfOpenCalls必须大于0");
+        }
+        this.halfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    /**
+     * 设置半开状态的最长时间, 放行的探测在这段时间内没有全部结束(例如探测一直没有响应)时重新打开, 默认为30秒
+     * @param millis 最长时间，毫秒
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setMaxHalfOpenDuration(long millis){
+        if (millis <= 0){
+            throw new IllegalArgumentException("millis必须大于0");
+        }
+        this.maxHalfOpenNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        return this;
+    }
+
+    /**
+     * 设置哪些错误计为失败, 默认所有的错误(取消除外)都计为失败
+     * @param recordFailure 返回true时计为失败
+     * @return CircuitBreaker
+     */
+    public synchronized CircuitBreaker setRecordFailure(PromiseCallback<RuntimeException, Boolean> recordFailure){
+        this.recordFailure = recordFailure;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取状态, 打开时间已到的熔断器会返回HalfOpen
+     * @return 状态
+     */
+    public synchronized State getState(){
+        if (state == State.Open && System.nanoTime() - openedAt >= openNanos){
+            return State.HalfOpen;
+        }
+        return state;
+    }
+
+    /**
+     * 当前窗口的失败率
+     * @return 失败率, 没有调用时为0
+     */
+    public synchronized float getFailureRate(){
+        return windowCount == 0 ? 0 : failureCount / (float) windowCount;
+    }
+
+    /**
+     * 当前窗口的慢调用率
+     * @return 慢调用率, 没有调用时为0
+     */
+    public synchronized float getSlowCallRate(){
+        return windowCount == 0 ? 0 : slowCount / (float) windowCount;
+    }
+
+    /**
+     * 强制关闭熔断器并清空统计
+     */
+    public synchronized void reset(){
+        transitionTo(State.Closed);
+    }
+
+    /**
+     * 通过熔断器执行
+     * @param supplier 创建Promise
+     * @param <R> 返回值类型
+     * @return Promise, 熔断器打开时直接以CircuitBreakerOpenException失败
+     */
+    public <R> Promise<R> execute(PromiseVoidArgCallback<Promise<R>> supplier){
+        final int permit = acquire();
+        if (permit < 0){
+            return Promise.rejected(openException);
+        }
+        Promise<R> promise;
+        try {
+            promise = supplier.call();
+        }catch (RuntimeException ex){
+            promise = Promise.rejected(ex);
+        }
+        if (promise == null){
+            promise = Promise.rejected(new IllegalStateException("supplier不能返回null"));
+        }
+
+        final long startTime = System.nanoTime();
+        //统计只是旁观, 不计入观察者; 调用者拿到的是子Promise, 取消时不会影响同一Promise的其它下游
+        Promise<R> result = promise.derive();
+        promise.subscribe(new PromiseResolver<R>() {
+            @Override
+            public void resolve(R result, RuntimeException error) {
+                record(permit, System.nanoTime() - startTime, error);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 包装一个回调, 每次调用都通过熔断器执行
+     * @param callback 回调
+     * @param <A> 参数类型
+     * @param <R> 返回值类型
+     * @return 包装后的回调
+     */
+    public <A, R> PromiseCallback<A, Promise<R>> wrap(final PromiseCallback<A, Promise<R>> callback){
+        return new PromiseCallback<A, Promise<R>>() {
+            @Override
+            public Promise<R> call(final A arg) {
+                return execute(new PromiseVoidArgCallback<Promise<R>>() {
+                    @Override
+                    public Promise<R> call() {
+                        return callback.call(arg);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * 申请放行
+     * @return 当前的generation, 被拒绝时返回-1
+     */
+    private synchronized int acquire(){
+        if (state == State.Closed){
+            return generation;
+        }
+        if (state == State.Open){
+            if (System.nanoTime() - openedAt < openNanos){
+                return -1;
+            }
+            transitionTo(State.HalfOpen);
+        }
+        if (halfOpenPermitted >= halfOpenCalls){
+            if (System.nanoTime() - halfOpenedAt >= maxHalfOpenNanos){
+                //探测迟迟没有结束, 按失败处理, 之后结束的探测属于旧的generation, 会被忽略
+                transitionTo(State.Open);
+            }
+            return -1;
+        }
+        halfOpenPermitted ++;
+        return generation;
+    }
+
+    /**
+     * 记录调用的结果
+     */
+    private synchronized void record(int permit, long durationNanos, RuntimeException error){
+        if (permit != generation || error instanceof CancellationException){
+            //状态已经变化, 或调用被取消, 不计入统计; 半开状态下归还探测名额
+            if (permit == generation && state == State.HalfOpen){
+                halfOpenPermitted --;
+            }
+            return;
+        }
+
+        int outcome = SUCCESS;
+        if (error != null && (recordFailure == null || Boolean.TRUE.equals(recordFailure.call(error)))){
+            outcome |= FAILURE;
+        }
+        if (durationNanos >= slowCallNanos){
+            outcome |= SLOW;
+        }
+        push(outcome);
+
+        if (state == State.Closed){
+            if (windowCount >= minimumCalls && exceedsThreshold()){
+                transitionTo(State.Open);
+            }
+        }else if (state == State.HalfOpen && windowCount >= halfOpenCalls){
+            transitionTo(exceedsThreshold() ? State.Open : State.Closed);
+        }
+    }
+
+    private boolean exceedsThreshold(){
+        return failureCount >= failureRateThreshold * windowCount
+                || slowCount >= slowCallRateThreshold * windowCount;
+    }
+
+    /**
+     * 将结果放入滑动窗口, 窗口满时移除最早的结果
+     */
+    private void push(int outcome){
+        if (windowCount == window.length){
+            int eldest = window[windowIndex];
+            if ((eldest & FAILURE) != 0){
+                failureCount --;
+            }
+            if ((eldest & SLOW) != 0){
+                slowCount --;
+            }
+        }else {
+            windowCount ++;
+        }
+        window[windowIndex] = (byte) outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        if ((outcome & FAILURE) != 0){
+            failureCount ++;
+        }
+        if ((outcome & SLOW) != 0){
+            slowCount ++;
+        }
+    }
+
+    private void transitionTo(State state){
+        this.state = state;
+        this.generation ++;
+        this.halfOpenPermitted = 0;
+        if (state == State.Open){
+            this.openedAt = System.nanoTime();
+        }else if (state == State.HalfOpen){
+            this.halfOpenedAt = System.nanoTime();
+        }
+        resetWindow();
+    }
+
+    private void resetWindow(){
+        windowIndex = 0;
+        windowCount = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+
+    /**
+     * 阈值为0时任何调用都会达到阈值, 熔断器一旦统计够次数就会打开, 因此不允许
+     */
+    private static void checkRate(float rate){
+        if (rate <= 0 || rate > 1){
+            throw new IllegalArgumentException("rate必须大于0且不大于1");
+        }
+    }
+}
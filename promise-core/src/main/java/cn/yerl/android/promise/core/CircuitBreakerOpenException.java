@@ -0,0 +1,29 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 熔断器处于打开状态, 请求被直接拒绝
+ * 不记录调用栈, 使拒绝的开销尽可能小
+ * Created by Alan Yeh on 2017/10/10.
+ */
+
+public class CircuitBreakerOpenException extends RuntimeException {
+    private final String name;
+
+    public CircuitBreakerOpenException(String name){
+        super("circuit breaker '" + name + "' is open");
+        this.name = name;
+    }
+
+    /**
+     * 熔断器的名字
+     * @return 名字
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
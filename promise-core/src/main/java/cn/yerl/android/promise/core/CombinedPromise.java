@@ -0,0 +1,142 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 组合多个Promise: Promise.all、Promise.allSettled、Promise.any
+ * 结果按位置写入预先分配的数组, 剩余数量减为0时结束, 整个过程只有一次遍历且不需要加锁.
+ * @param <R> 每个Promise的返回值类型
+ * @param <T> 组合之后的返回值类型
+ * Created by Alan Yeh on 2017/9/27.
+ */
+final class CombinedPromise<R, T> extends Promise<T> {
+    /// 全部成功才成功, 第一个失败直接结束
+    static final int ALL = 0;
+    /// 等待全部结束, 返回每一个的结果
+    static final int ALL_SETTLED = 1;
+    /// 第一个成功直接结束, 全部失败才失败
+    static final int ANY = 2;
+
+    private static final AtomicIntegerFieldUpdater<CombinedPromise> REMAINING =
+            AtomicIntegerFieldUpdater.newUpdater(CombinedPromise.class, "remaining");
+
+    private final Collection<? extends Promise<R>> promises;
+    private final int mode;
+    private final boolean cancelOnFailure;
+    /// ALL时保存结果, ALL_SETTLED时保存PromiseOutcome, ANY时保存错误
+    private final Object[] results;
+    private volatile int remaining;
+
+    CombinedPromise(Collection<? extends Promise<R>> promises, int mode, boolean cancelOnFailure){
+        super(State.Pending);
+        this.promises = promises;
+        this.mode = mode;
+        this.cancelOnFailure = cancelOnFailure;
+        this.results = new Object[promises.size()];
+        this.remaining = results.length;
+    }
+
+    void start(){
+        if (results.length == 0){
+            finish();
+            return;
+        }
+        //先观察所有的Promise, 避免在拼接过程中就结束时, 释放了还没有被观察的Promise
+        //即使不需要取消, 也要计入观察者, 避免其它下游取消时把还在等待的Promise一起取消
+        for (Promise<R> promise : promises){
+            promise.retain();
+        }
+        int index = 0;
+        for (Promise<R> promise : promises){
+            if (index >= results.length){
+                break;
+            }
+            promise.subscribe(new Slot(index ++));
+        }
+    }
+
+    /**
+     * 所有的Promise都已经结束
+     */
+    @SuppressWarnings("unchecked")
+    private void finish(){
+        if (mode == ANY){
+            RuntimeException[] errors = new RuntimeException[results.length];
+            System.arraycopy(results, 0, errors, 0, results.length);
+            settle(null, new PromiseAggregateException("all promise were rejected.", Arrays.asList(errors)));
+        }else {
+            settle((T) Arrays.asList(results), null);
+        }
+    }
+
+    /**
+     * 提前结束(ALL时的第一个失败, ANY时的第一个成功)
+     */
+    private void finishEarly(T result, RuntimeException error){
+        if (settle(result, error)){
+            releaseAll();
+        }
+    }
+
+    @Override
+    void onCancelled() {
+        releaseAll();
+    }
+
+    /**
+     * 放弃还没有结束的Promise, cancelOnFailure时没有其它下游的Promise会被取消
+     */
+    private void releaseAll(){
+        for (Promise<R> promise : promises){
+            if (cancelOnFailure){
+                promise.unobserve();
+            }else {
+                promise.release();
+            }
+        }
+    }
+
+    /**
+     * 接收某个位置的结果
+     */
+    private final class Slot implements PromiseResolver<R> {
+        private final int index;
+
+        Slot(int index){
+            this.index = index;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void resolve(R result, RuntimeException error) {
+            if (getState() != State.Pending){
+                return;
+            }
+            switch (mode){
+                case ALL:
+                    if (error != null){
+                        finishEarly(null, new RuntimeException("one of promise in promises was rejected", error));
+                        return;
+                    }
+                    results[index] = result;
+                    break;
+                case ALL_SETTLED:
+                    results[index] = new PromiseOutcome<>(result, error);
+                    break;
+                default:
+                    if (error == null){
+                        finishEarly((T) result, null);
+                        return;
+                    }
+                    results[index] = error;
+                    break;
+            }
+            if (REMAINING.decrementAndGet(CombinedPromise.this) == 0){
+                finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 执行链中的一个步骤
+ * 同时保存回调、调度器和下游的状态: 它本身就是下游的Promise, 也是上游的监听者, 也是派发到调度器的任务,
+ * 因此每拼接一个步骤只需要创建一个对象.
+ * @param <A> 上游的结果类型
+ * @param <N> 返回值类型
+ * Created by Alan Yeh on 2017/9/22.
+ */
+final class Continuation<A, N> extends Promise<N> implements PromiseResolver<A>, Runnable {
+    /// 执行时机
+    static final int THEN = 0;
+    static final int ERROR = 1;
+    static final int ALWAYS = 2;
+
+    /// 回调类型
+    static final int CALLBACK = 0;
+    static final int VOID_RETURN = 1;
+    static final int VOID_ARG = 2;
+    static final int VOID_ARG_VOID_RETURN = 3;
+    static final int WITH_RESOLVER = 4;
+
+    private final Scheduler scheduler;
+    private final int mode;
+    private final int kind;
+    /// 回调执行之后释放, 避免执行链持有回调(以及回调所引用的Activity等)
+    private Object callback;
+    private final long delayMillis;
+
+    /// 传给回调的参数, then时为上游的结果, error时为上游的错误, always时为两者之一
+    private Object input;
+
+    /// 是否正在定时器中等待
+    private boolean delayed;
+    /// 定时器中的任务, 取消时同时取消定时器
+    private HashedWheelTimer.Timeout delayTimeout;
+
+    /// 当前线程上正在直接执行(没有派发)的步骤数量
+    private static final ThreadLocal<int[]> fusionDepth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    Continuation(Scheduler scheduler, int mode, int kind, Object callback, long delayMillis){
+        super(State.Pending);
+        this.scheduler = scheduler;
+        this.mode = mode;
+        this.kind = kind;
+        this.callback = callback;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * 上游结束
+     */
+    @Override
+    public void resolve(A result, RuntimeException error) {
+        receive(result, error, true);
+    }
+
+    /**
+     * 接收上游的结果
+     * 如果当前线程就是目标调度器的线程, 则直接执行, 省去一次派发:
+     * 无论是拼接时直接接收(上游已经结束), 还是结算时触发的, 当前线程上连续直接执行的步骤都不超过maxFusionDepth个,
+     * 超过时重新派发, 避免递归拼接或执行链过长时调用栈溢出; 按优先级执行的线程池中有应该先执行的任务时也会重新派发
+     * @param fusable 是否允许直接执行, 上游有多个下游时只有最后一个允许, 其余的派发出去并行执行
+     */
+    @SuppressWarnings("unchecked")
+    void receive(A result, RuntimeException error, boolean fusable){
+        if (mode == THEN && error != null){
+            this.callback = null;
+            settle(null, error);
+            return;
+        }
+        if (mode == ERROR && error == null){
+            this.callback = null;
+            settle((N) result, null);
+            return;
+        }
+
+        this.input = error != null ? error : result;
+
+        if (delayMillis > 0){
+            //先交给定时器, 到期之后再派发到调度器
+            this.delayed = true;
+            this.delayTimeout = HashedWheelTimer.INSTANCE.schedule(this, delayMillis);
+        }else if (fusable && scheduler.isCurrentThread() && canFuse() && enterFusion()){
+            try {
+                run();
+            }finally {
+                fusionDepth.get()[0] --;
+            }
+        }else {
+            scheduler.execute(this);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run() {
+        if (delayed){
+            delayed = false;
+            delayTimeout = null;
+            scheduler.execute(this);
+            return;
+        }
+        //在排队时已经被取消
+        if (getState() != State.Pending){
+            this.callback = null;
+            this.input = null;
+            return;
+        }
+
+        Object callback = this.callback;
+        Object input = this.input;
+        this.callback = null;
+        this.input = null;
+        try {
+            switch (kind){
+                case CALLBACK:
+                    complete(((PromiseCallback<Object, N>) callback).call(input), null);
+                    break;
+                case VOID_RETURN:
+                    ((PromiseVoidReturnCallback<Object>) callback).call(input);
+                    complete(null, null);
+                    break;
+                case VOID_ARG:
+                    complete(((PromiseVoidArgCallback<N>) callback).call(), null);
+                    break;
+                case VOID_ARG_VOID_RETURN:
+                    ((PromiseVoidArgVoidReturnCallback) callback).call();
+                    complete(null, null);
+                    break;
+                default:
+                    ((PromiseCallbackWithResolver<Object, N>) callback).call(input, newResolver());
+                    break;
+            }
+        }catch (RuntimeException ex){
+            complete(null, ex);
+        }
+    }
+
+    /**
+     * 调度器是否允许跳过队列直接执行, 按优先级执行的线程池中有应该先执行的任务时不允许
+     */
+    private boolean canFuse(){
+        return !(scheduler instanceof PoolScheduler) || ((PoolScheduler) scheduler).canFuse(getPriority());
+    }
+
+    /**
+     * 尝试在当前线程上直接执行, 成功时深度加1, 执行完毕后需要减1
+     * @return 是否没有超过最大深度
+     */
+    private static boolean enterFusion(){
+        int max = Promise.getMaxFusionDepth();
+        if (max <= 0){
+            return false;
+        }
+        int[] depth = fusionDepth.get();
+        if (depth[0] >= max){
+            return false;
+        }
+        depth[0] ++;
+        return true;
+    }
+
+    @Override
+    void onCancelled() {
+        HashedWheelTimer.Timeout timeout = this.delayTimeout;
+        if (timeout != null){
+            timeout.cancel();
+        }
+        this.callback = null;
+        this.input = null;
+    }
+
+    @Override
+    boolean isIntermediate() {
+        return true;
+    }
+}
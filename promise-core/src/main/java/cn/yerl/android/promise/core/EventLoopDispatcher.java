@@ -0,0 +1,76 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 普通JVM环境下的主线程派发器
+ * 使用一个单独的线程作为事件循环, 所有任务按提交顺序在该线程上执行
+ * Created by Alan Yeh on 2017/9/19.
+ */
+public class EventLoopDispatcher implements MainDispatcher {
+    private final ThreadPoolExecutor loop;
+    private volatile Thread thread;
+    /// 是否是找不到MainDispatcher时自动创建的, 只有自动创建的会被Promise.shutdown停止
+    private boolean defaultLoop;
+
+    public EventLoopDispatcher(){
+        this("promise-main");
+    }
+
+    /**
+     * @param name 事件循环线程名
+     */
+    public EventLoopDispatcher(final String name){
+        //线程在第一次post时才创建
+        this.loop = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                EventLoopDispatcher.this.thread = thread;
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 找不到MainDispatcher时使用的默认事件循环
+     */
+    static EventLoopDispatcher createDefault(){
+        EventLoopDispatcher dispatcher = new EventLoopDispatcher();
+        dispatcher.defaultLoop = true;
+        return dispatcher;
+    }
+
+    boolean isDefault(){
+        return defaultLoop;
+    }
+
+    @Override
+    public void post(Runnable task) {
+        loop.execute(task);
+    }
+
+    @Override
+    public boolean isMainThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 没有正在执行和排队的任务
+     * @return 是否空闲
+     */
+    boolean isIdle(){
+        return loop.getQueue().isEmpty() && loop.getActiveCount() == 0;
+    }
+
+    /**
+     * 停止事件循环, 已提交的任务会继续执行
+     */
+    public void shutdown(){
+        loop.shutdown();
+    }
+}
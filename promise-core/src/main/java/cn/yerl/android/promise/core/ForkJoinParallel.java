@@ -0,0 +1,96 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 在ForkJoinPool中执行ParallelPromise
+ * ForkJoinPool在Android 5.0(API 21)才开始提供, 因此单独放在这个类中, 只有确定支持时才会加载.
+ * 每一段在数量超过阈值时一分为二, 左半部分交给其它线程窃取, 右半部分在当前线程继续切分.
+ * Created by Alan Yeh on 2017/10/13.
+ */
+final class ForkJoinParallel {
+    /// 第一次使用时才创建
+    private static ForkJoinPool pool;
+
+    private ForkJoinParallel(){
+    }
+
+    private static synchronized ForkJoinPool pool(){
+        if (pool == null){
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                private int index;
+
+                @Override
+                public synchronized ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                    };
+                    thread.setName("promise-parallel-" + (index ++));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * 关闭线程池, 已提交的任务会继续执行, 之后再使用会重新创建
+     */
+    static synchronized void shutdown(){
+        if (pool != null){
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * 没有正在执行和排队的任务
+     */
+    static synchronized boolean isQuiescent(){
+        return pool == null || pool.isQuiescent();
+    }
+
+    static <A, R> void execute(final ParallelPromise<A, R> promise){
+        pool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    R result = new Split<>(promise, 0, promise.size()).invoke();
+                    promise.settle(result, null);
+                }catch (RuntimeException ex){
+                    promise.settle(null, ex);
+                }
+            }
+        });
+    }
+
+    private static final class Split<A, R> extends RecursiveTask<R> {
+        private final ParallelPromise<A, R> promise;
+        private final int from;
+        private final int to;
+
+        Split(ParallelPromise<A, R> promise, int from, int to){
+            this.promise = promise;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected R compute() {
+            if (promise.getState() != Promise.State.Pending){
+                return null;
+            }
+            if (to - from <= promise.getThreshold()){
+                return promise.reduceRange(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Split<A, R> left = new Split<>(promise, from, middle);
+            left.fork();
+            R right = new Split<>(promise, middle, to).compute();
+            //合并之前会再检查一次状态, 被取消时不会把中途放弃的null交给reducer
+            return promise.combine(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 时间轮定时器
+ * 所有延迟任务(thenDelay、延迟执行的构造函数、timeout等)共用一个线程, 添加与取消都是O(1).
+ * 定时器只负责在到期时调用任务, 任务本身应该尽快把工作派发到调度器上.
+ * 没有待执行的任务时, 线程会挂起, 不会空转.
+ * Created by Alan Yeh on 2017/9/25.
+ */
+final class HashedWheelTimer {
+    static final HashedWheelTimer INSTANCE = new HashedWheelTimer(10, 512);
+
+    /// 最长延迟时间(约73年), 纳秒; 更长的延迟按此处理, 避免计算到期时间时溢出
+    static final long MAX_DELAY_NANOS = Long.MAX_VALUE / 4;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    /// 新添加的任务, 由定时器线程放入时间轮
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    /// 已取消的任务, 由定时器线程从时间轮中移除
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    /// 尚未到期且未取消的任务数量
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicInteger started = new AtomicInteger();
+    private volatile Thread worker;
+
+    /// 以下字段只在定时器线程中访问
+    private long startTime;
+    private long tick;
+
+    /**
+     * @param tickMillis 每一格的时间，毫秒
+     * @param ticksPerWheel 时间轮的格数, 会向上取整为2的幂
+     */
+    HashedWheelTimer(long tickMillis, int ticksPerWheel){
+        int size = 1;
+        while (size < ticksPerWheel){
+            size <<= 1;
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i ++){
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * 添加延迟任务
+     * @param task 任务
+     * @param delayMillis 延迟时间，毫秒, 超过MAX_DELAY_NANOS时按MAX_DELAY_NANOS处理
+     * @return Timeout, 可用于取消任务
+     */
+    Timeout schedule(Runnable task, long delayMillis){
+        if (task == null){
+            throw new IllegalArgumentException("task不能为空");
+        }
+        start();
+
+        //到期时间只用于和startTime相减, 与System.nanoTime的比较一样只依赖差值, 因此相加时回绕也没有关系;
+        //只要限制延迟时间, 差值就不会溢出
+        long delayNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0)), MAX_DELAY_NANOS);
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + delayNanos);
+        scheduled.add(timeout);
+        if (pendingCount.getAndIncrement() == 0){
+            LockSupport.unpark(worker);
+        }
+        return timeout;
+    }
+
+    private void start(){
+        if (started.get() == 0 && started.compareAndSet(0, 1)){
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, "promise-timer");
+            thread.setDaemon(true);
+            worker = thread;
+            thread.start();
+        }
+    }
+
+    private void loop(){
+        startTime = System.nanoTime();
+        for (;;){
+            if (pendingCount.get() == 0){
+                //时间轮中没有待执行的任务, 从当前时间重新开始计算
+                startTime = System.nanoTime() - tick * tickNanos;
+                //挂起之前清理已取消的任务, 避免它们一直被队列引用
+                removeCancelled();
+                transferScheduled();
+                if (pendingCount.get() == 0){
+                    LockSupport.park(this);
+                    startTime = System.nanoTime() - tick * tickNanos;
+                }
+                continue;
+            }
+
+            waitForNextTick();
+            removeCancelled();
+            transferScheduled();
+            wheel[(int) (tick & mask)].expire();
+            tick ++;
+        }
+    }
+
+    /**
+     * 等待下一格到来
+     */
+    private void waitForNextTick(){
+        long deadline = tickNanos * (tick + 1);
+        for (;;){
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos <= 0){
+                return;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void transferScheduled(){
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null){
+            if (timeout.state != Timeout.INIT){
+                continue;
+            }
+            long relativeDeadline = timeout.deadline - startTime;
+            long calculated = relativeDeadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            //已经过期的任务放在当前格, 马上执行
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled(){
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null){
+            if (timeout.bucket != null){
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * 延迟任务
+     */
+    static final class Timeout {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        /// 到期时间(System.nanoTime), 纳秒
+        private final long deadline;
+        private long remainingRounds;
+        private volatile int state = INIT;
+
+        private Timeout prev;
+        private Timeout next;
+        private Bucket bucket;
+
+        Timeout(HashedWheelTimer timer, Runnable task, long deadline){
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务
+         * @return 任务还未执行且取消成功时返回true
+         */
+        boolean cancel(){
+            if (!STATE.compareAndSet(this, INIT, CANCELLED)){
+                return false;
+            }
+            timer.pendingCount.decrementAndGet();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        boolean isCancelled(){
+            return state == CANCELLED;
+        }
+
+        private void expire(){
+            if (!STATE.compareAndSet(this, INIT, EXPIRED)){
+                return;
+            }
+            timer.pendingCount.decrementAndGet();
+            try {
+                task.run();
+            }catch (RuntimeException ignored){
+                //任务的异常不能影响定时器线程
+            }
+        }
+    }
+
+    /**
+     * 时间轮中的一格, 使用双向链表保存任务, 只在定时器线程中访问
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout){
+            timeout.bucket = this;
+            if (head == null){
+                head = tail = timeout;
+            }else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(){
+            Timeout timeout = head;
+            while (timeout != null){
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0){
+                    remove(timeout);
+                    timeout.expire();
+                }else if (timeout.isCancelled()){
+                    remove(timeout);
+                }else {
+                    timeout.remainingRounds --;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout){
+            if (timeout.bucket != this){
+                return;
+            }
+            Timeout next = timeout.next;
+            if (timeout.prev != null){
+                timeout.prev.next = next;
+            }
+            if (next != null){
+                next.prev = timeout.prev;
+            }
+            if (timeout == head){
+                head = next;
+            }
+            if (timeout == tail){
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
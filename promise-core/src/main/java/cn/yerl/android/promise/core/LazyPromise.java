@@ -0,0 +1,40 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 延迟执行的Promise
+ * 创建时不执行任务, 第一次有下游拼接时才在默认调度器上执行, 只执行一次
+ * @param <R> 返回值类型
+ * Created by Alan Yeh on 2017/9/26.
+ */
+final class LazyPromise<R> extends Promise<R> {
+    private static final AtomicIntegerFieldUpdater<LazyPromise> STARTED =
+            AtomicIntegerFieldUpdater.newUpdater(LazyPromise.class, "started");
+
+    private volatile int started;
+    /// 开始执行后释放
+    private volatile PromiseCallbackWithResolver<Object, R> callback;
+
+    LazyPromise(PromiseCallbackWithResolver<Object, R> callback){
+        super(State.Pending);
+        this.callback = callback;
+    }
+
+    @Override
+    void onSubscribe() {
+        if (started == 0 && STARTED.compareAndSet(this, 0, 1)){
+            PromiseCallbackWithResolver<Object, R> callback = this.callback;
+            this.callback = null;
+            //还没有开始就被取消了
+            if (callback != null && getState() == State.Pending){
+                execute(callback);
+            }
+        }
+    }
+
+    @Override
+    void onCancelled() {
+        this.callback = null;
+    }
+}
@@ -0,0 +1,22 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 主线程派发器
+ * promise-core本身不依赖Android, 主线程由MainDispatcher提供.
+ * 启动时通过ServiceLoader查找实现(如promise-android中的AndroidMainDispatcher),
+ * 如果找不到, 则使用EventLoopDispatcher作为主线程.
+ * Created by Alan Yeh on 2017/9/19.
+ */
+public interface MainDispatcher {
+    /**
+     * 在主线程执行任务
+     * @param task 任务
+     */
+    void post(Runnable task);
+
+    /**
+     * 当前线程是否为主线程
+     * @return 是否为主线程
+     */
+    boolean isMainThread();
+}
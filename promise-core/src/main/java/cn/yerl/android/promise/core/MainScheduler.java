@@ -0,0 +1,113 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 主线程调度器, 实际的派发由MainDispatcher完成
+ * Created by Alan Yeh on 2017/9/18.
+ */
+final class MainScheduler implements Scheduler {
+    static final MainScheduler INSTANCE = new MainScheduler();
+
+    private volatile MainDispatcher dispatcher;
+
+    private MainScheduler(){
+    }
+
+    /**
+     * 通过ServiceLoader查找MainDispatcher的实现, 找不到时使用EventLoopDispatcher
+     * Android环境下找不到时直接抛出异常, 否则回调会在EventLoopDispatcher的线程而不是UI线程中执行, 更新UI时才会崩溃, 难以排查
+     */
+    private static MainDispatcher loadDispatcher(){
+        ServiceConfigurationError cause = null;
+        try {
+            Iterator<MainDispatcher> iterator = ServiceLoader.load(MainDispatcher.class, MainDispatcher.class.getClassLoader()).iterator();
+            if (iterator.hasNext()){
+                return iterator.next();
+            }
+        }catch (ServiceConfigurationError ex){
+            cause = ex;
+        }
+        if (isAndroid()){
+            throw new IllegalStateException("Android环境下找不到MainDispatcher, 请依赖promise-android, 或通过Schedulers.setMainDispatcher设置主线程派发器", cause);
+        }
+        return EventLoopDispatcher.createDefault();
+    }
+
+    /**
+     * android.os.Looper是否存在
+     */
+    private static boolean isAndroid(){
+        try {
+            Class.forName("android.os.Looper", false, MainScheduler.class.getClassLoader());
+            return true;
+        }catch (ClassNotFoundException ex){
+            return false;
+        }
+    }
+
+    /**
+     * 获取主线程派发器, 第一次使用时才通过ServiceLoader查找, 避免加载Promise时就扫描ServiceLoader、创建Handler
+     */
+    MainDispatcher getDispatcher(){
+        MainDispatcher dispatcher = this.dispatcher;
+        if (dispatcher == null){
+            synchronized (this){
+                dispatcher = this.dispatcher;
+                if (dispatcher == null){
+                    dispatcher = loadDispatcher();
+                    this.dispatcher = dispatcher;
+                }
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * 没有正在执行和排队的任务, 只有EventLoopDispatcher可以判断, 其它派发器(如Android主线程)总是返回true
+     */
+    boolean isIdle(){
+        MainDispatcher dispatcher = this.dispatcher;
+        return !(dispatcher instanceof EventLoopDispatcher) || ((EventLoopDispatcher) dispatcher).isIdle();
+    }
+
+    void setDispatcher(MainDispatcher dispatcher){
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * 停止默认的事件循环(EventLoopDispatcher), 已提交的任务会继续执行, 之后再使用会重新创建
+     * 通过ServiceLoader找到的或者通过setDispatcher设置的派发器(如Android主线程)不受影响
+     */
+    synchronized void shutdown(){
+        MainDispatcher dispatcher = this.dispatcher;
+        if (dispatcher instanceof EventLoopDispatcher && ((EventLoopDispatcher) dispatcher).isDefault()){
+            this.dispatcher = null;
+            ((EventLoopDispatcher) dispatcher).shutdown();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        for (;;){
+            MainDispatcher dispatcher = getDispatcher();
+            try {
+                dispatcher.post(task);
+                return;
+            }catch (RejectedExecutionException ex){
+                //与shutdown同时执行, 派发到了刚刚停止的事件循环, 换到新的事件循环重试
+                if (this.dispatcher == dispatcher){
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        return getDispatcher().isMainThread();
+    }
+}
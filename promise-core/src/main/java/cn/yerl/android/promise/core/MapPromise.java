@@ -0,0 +1,181 @@
+package cn.yerl.android.promise.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Promise.map、Promise.mapUnordered
+ * 同时最多只有maxConcurrency个Promise在执行, 每结束一个再从输入中取下一个.
+ * 取数据、创建Promise都在drain中进行, drain通过wip计数保证同一时刻只有一个线程在执行, 不需要加锁.
+ * @param <A> 输入类型
+ * @param <R> 返回值类型
+ * Created by Alan Yeh on 2017/9/28.
+ */
+final class MapPromise<A, R> extends Promise<List<R>> {
+    private static final AtomicIntegerFieldUpdater<MapPromise> WIP =
+            AtomicIntegerFieldUpdater.newUpdater(MapPromise.class, "wip");
+    private static final AtomicIntegerFieldUpdater<MapPromise> ACTIVE =
+            AtomicIntegerFieldUpdater.newUpdater(MapPromise.class, "active");
+
+    private final int maxConcurrency;
+    private final boolean ordered;
+
+    /// 以下字段只在drain中访问
+    private Iterator<? extends A> iterator;
+    private PromiseCallback<A, Promise<R>> mapper;
+    /// 按输入顺序保存, 只有map使用
+    private final List<Slot> slots = new ArrayList<>();
+
+    /// 按结束顺序保存, 只有mapUnordered使用
+    private final Queue<Slot> completed;
+    /// 正在执行的Promise, 失败或取消时放弃它们
+    private final Set<Slot> inflight = Collections.newSetFromMap(new ConcurrentHashMap<Slot, Boolean>());
+
+    private volatile int wip;
+    private volatile int active;
+
+    MapPromise(Iterable<? extends A> items, int maxConcurrency, PromiseCallback<A, Promise<R>> mapper, boolean ordered){
+        super(State.Pending);
+        this.iterator = items.iterator();
+        this.maxConcurrency = maxConcurrency;
+        this.mapper = mapper;
+        this.ordered = ordered;
+        this.completed = ordered ? null : new ConcurrentLinkedQueue<Slot>();
+    }
+
+    void drain(){
+        if (WIP.getAndIncrement(this) != 0){
+            return;
+        }
+        int missed = 1;
+        for (;;){
+            if (getState() != State.Pending){
+                iterator = null;
+                mapper = null;
+                return;
+            }
+            while (iterator != null && active < maxConcurrency){
+                if (!iterator.hasNext()){
+                    iterator = null;
+                    mapper = null;
+                    break;
+                }
+                Slot slot = new Slot();
+                if (ordered){
+                    slots.add(slot);
+                }
+                ACTIVE.incrementAndGet(this);
+
+                Promise<R> promise;
+                try {
+                    promise = mapper.call(iterator.next());
+                }catch (RuntimeException ex){
+                    fail(ex);
+                    return;
+                }
+                if (promise == null){
+                    promise = resolved(null);
+                }
+                slot.promise = promise;
+                promise.retain();
+                inflight.add(slot);
+                if (getState() != State.Pending){
+                    //加入之前已经失败或取消, releaseInflight可能没有看到这个slot
+                    if (inflight.remove(slot)){
+                        promise.unobserve();
+                    }
+                    iterator = null;
+                    mapper = null;
+                    return;
+                }
+                promise.subscribe(slot);
+            }
+
+            if (iterator == null && active == 0){
+                finish();
+                return;
+            }
+
+            missed = WIP.addAndGet(this, -missed);
+            if (missed == 0){
+                return;
+            }
+        }
+    }
+
+    private void finish(){
+        List<R> results;
+        if (ordered){
+            results = new ArrayList<>(slots.size());
+            for (Slot slot : slots){
+                results.add(slot.result);
+            }
+        }else {
+            results = new ArrayList<>(completed.size());
+            Slot slot;
+            while ((slot = completed.poll()) != null){
+                results.add(slot.result);
+            }
+        }
+        slots.clear();
+        settle(results, null);
+    }
+
+    private void fail(RuntimeException error){
+        if (settle(null, error)){
+            releaseInflight();
+        }
+    }
+
+    @Override
+    void onCancelled() {
+        releaseInflight();
+    }
+
+    /**
+     * 放弃正在执行的Promise
+     * 逐个移除, 与drain同时移除同一个slot时只有一方会unobserve
+     */
+    private void releaseInflight(){
+        for (Slot slot : inflight){
+            if (!inflight.remove(slot)){
+                continue;
+            }
+            Promise<R> promise = slot.promise;
+            if (promise != null){
+                promise.unobserve();
+            }
+        }
+    }
+
+    /**
+     * 保存一个输入的结果
+     */
+    private final class Slot implements PromiseResolver<R> {
+        private volatile Promise<R> promise;
+        private R result;
+
+        @Override
+        public void resolve(R result, RuntimeException error) {
+            inflight.remove(this);
+            this.promise = null;
+            if (error != null){
+                fail(error);
+                return;
+            }
+            this.result = result;
+            if (completed != null){
+                completed.add(this);
+            }
+            ACTIVE.decrementAndGet(MapPromise.this);
+            drain();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Promise.parallel、thenParallel
+ * 把输入按数量切分为若干段, 每一段在同一个线程中依次转换、合并, 最后按顺序合并每一段的结果, 不会为每一个输入创建Promise.
+ * 支持ForkJoinPool(Android 5.0及以上)时交给ForkJoinParallel按工作窃取的方式递归切分, 否则切分为固定的段数交给计算调度器.
+ * reducer需要满足结合律, 合并的顺序与输入的顺序一致.
+ * @param <A> 输入类型
+ * @param <R> 返回值类型
+ * Created by Alan Yeh on 2017/10/13.
+ */
+final class ParallelPromise<A, R> extends Promise<R> {
+    private static final AtomicIntegerFieldUpdater<ParallelPromise> REMAINING =
+            AtomicIntegerFieldUpdater.newUpdater(ParallelPromise.class, "remaining");
+
+    /// 每个线程平均分到的段数, 段数多于线程数, 执行快的线程可以多执行几段
+    private static final int SPLITS_PER_THREAD = 4;
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final boolean FORK_JOIN_SUPPORTED = isForkJoinSupported();
+
+    private final Object[] items;
+    private final PromiseCallback<A, R> mapper;
+    private final PromiseReducer<R, R> reducer;
+    /// 每一段的最大数量, 不超过它时不再切分
+    private final int threshold;
+
+    /// 以下字段只在不支持ForkJoinPool时使用
+    private Object[] partials;
+    private volatile int remaining;
+
+    ParallelPromise(Collection<? extends A> items, PromiseCallback<A, R> mapper, PromiseReducer<R, R> reducer){
+        super(State.Pending);
+        this.items = items.toArray();
+        this.mapper = mapper;
+        this.reducer = reducer;
+        this.threshold = Math.max(1, this.items.length / (PARALLELISM * SPLITS_PER_THREAD));
+    }
+
+    void start(){
+        if (items.length == 0){
+            settle(null, null);
+            return;
+        }
+        if (FORK_JOIN_SUPPORTED){
+            ForkJoinParallel.execute(this);
+            return;
+        }
+
+        int count = (items.length + threshold - 1) / threshold;
+        this.partials = new Object[count];
+        this.remaining = count;
+        Scheduler scheduler = Schedulers.compute();
+        for (int i = 0; i < count; i ++){
+            scheduler.execute(new Segment(i));
+        }
+    }
+
+    int size(){
+        return items.length;
+    }
+
+    int getThreshold(){
+        return threshold;
+    }
+
+    /**
+     * 依次转换并合并[from, to)之间的输入
+     * 已经结束(失败或被取消)时不再执行, 直接返回null
+     */
+    @SuppressWarnings("unchecked")
+    R reduceRange(int from, int to){
+        R accumulator = null;
+        for (int i = from; i < to; i ++){
+            if (getState() != State.Pending){
+                return null;
+            }
+            R value = mapper.call((A) items[i]);
+            accumulator = i == from ? value : reducer.call(accumulator, value);
+        }
+        return accumulator;
+    }
+
+    /**
+     * 合并相邻两段的结果
+     * 已经结束(失败或被取消)时, 其中一段可能是中途放弃的null, 不再交给reducer, 直接返回null
+     */
+    R combine(R left, R right){
+        if (getState() != State.Pending){
+            return null;
+        }
+        return reducer.call(left, right);
+    }
+
+    /**
+     * 不支持ForkJoinPool时, 在计算调度器中执行的一段
+     */
+    private final class Segment implements Runnable {
+        private final int index;
+
+        Segment(int index){
+            this.index = index;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            if (getState() != State.Pending){
+                return;
+            }
+            try {
+                int from = index * threshold;
+                partials[index] = reduceRange(from, Math.min(from + threshold, items.length));
+            }catch (RuntimeException ex){
+                settle(null, ex);
+                return;
+            }
+            if (REMAINING.decrementAndGet(ParallelPromise.this) != 0){
+                return;
+            }
+            //最后一段结束, 按顺序合并每一段的结果
+            try {
+                R result = (R) partials[0];
+                for (int i = 1; i < partials.length; i ++){
+                    result = combine(result, (R) partials[i]);
+                }
+                partials = null;
+                settle(result, null);
+            }catch (RuntimeException ex){
+                settle(null, ex);
+            }
+        }
+    }
+
+    /**
+     * 关闭并行计算使用的ForkJoinPool, 不支持时什么都不做
+     */
+    static void shutdownPool(){
+        if (FORK_JOIN_SUPPORTED){
+            ForkJoinParallel.shutdown();
+        }
+    }
+
+    /**
+     * 并行计算是否空闲
+     */
+    static boolean isPoolQuiescent(){
+        return !FORK_JOIN_SUPPORTED || ForkJoinParallel.isQuiescent();
+    }
+
+    private static boolean isForkJoinSupported(){
+        try {
+            Class.forName("java.util.concurrent.ForkJoinPool");
+            return true;
+        }catch (Throwable ex){
+            return false;
+        }
+    }
+}
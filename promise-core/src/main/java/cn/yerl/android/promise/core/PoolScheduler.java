@@ -0,0 +1,234 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 线程池调度器
+ * 线程由调度器自己创建, 因此可以判断当前线程是否属于该调度器.
+ * 线程池在第一次执行任务时才创建, 线程都是守护线程, 不会阻止进程退出; shutdown之后再执行任务会重新创建线程池.
+ * Created by Alan Yeh on 2017/9/21.
+ */
+final class PoolScheduler implements ThreadPoolScheduler, ThreadFactory {
+    /// 当前线程所属的调度器
+    private static final ThreadLocal<PoolScheduler> current = new ThreadLocal<>();
+
+    private final String name;
+    private final int corePoolSize;
+    private final int maximumPoolSize;
+    private final long keepAliveSeconds;
+    /// 是否直接交给线程执行, 不排队
+    private final boolean handoff;
+
+    /// 优先级每高一级, 相当于提前入队的时间; 小于0时按先进先出执行
+    private final long agingNanos;
+    /// 入队顺序, 排序的键相同时先入队的先执行
+    private final AtomicLong sequence = new AtomicLong();
+    /// 线程编号
+    private final AtomicInteger threadIndex = new AtomicInteger();
+
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * @param name 线程名前缀
+     * @param corePoolSize 核心线程数
+     * @param maximumPoolSize 最大线程数
+     * @param keepAliveSeconds 空闲线程存活时间，秒
+     * @param handoff 为true时任务直接交给线程执行(SynchronousQueue), 否则在无界队列中排队
+     */
+    PoolScheduler(String name, int corePoolSize, int maximumPoolSize, long keepAliveSeconds, boolean handoff){
+        this.name = name;
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        this.keepAliveSeconds = keepAliveSeconds;
+        this.handoff = handoff;
+        this.agingNanos = -1;
+    }
+
+    /**
+     * 按优先级执行的线程池
+     * 排序的键为 入队时间 - 优先级 * agingMillis, 键越小越先执行. 即高一级的任务可以排在agingMillis之内入队的低一级任务之前,
+     * 而等待超过agingMillis的低一级任务会排在新入队的高一级任务之前, 低优先级的任务不会一直等待.
+     * @param name 线程名前缀
+     * @param threads 线程数
+     * @param agingMillis 每一级优先级相当的等待时间，毫秒
+     */
+    PoolScheduler(String name, int threads, long agingMillis){
+        this.name = name;
+        this.corePoolSize = threads;
+        this.maximumPoolSize = threads;
+        this.keepAliveSeconds = 0;
+        this.handoff = false;
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(agingMillis);
+    }
+
+    /**
+     * 获取线程池, 不存在时创建
+     */
+    private ThreadPoolExecutor executor(){
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null){
+            synchronized (this){
+                executor = this.executor;
+                if (executor == null){
+                    BlockingQueue<Runnable> queue;
+                    if (agingNanos >= 0){
+                        queue = new PriorityBlockingQueue<>();
+                    }else if (handoff){
+                        queue = new SynchronousQueue<>();
+                    }else {
+                        queue = new LinkedBlockingQueue<>();
+                    }
+                    executor = new ThreadPoolExecutor(corePoolSize, maximumPoolSize, keepAliveSeconds, TimeUnit.SECONDS, queue, this);
+                    this.executor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (agingNanos < 0){
+            submit(task);
+            return;
+        }
+        //执行链中的步骤本身就是Promise, 从中取得优先级
+        Priority priority = task instanceof Promise ? ((Promise<?>) task).getPriority() : Priority.NORMAL;
+        long key = System.nanoTime() - priority.ordinal() * agingNanos;
+        submit(new PriorityTask(task, key, sequence.getAndIncrement()));
+    }
+
+    /**
+     * 提交到线程池
+     * 与shutdown同时执行时可能拿到刚刚关闭的线程池而被拒绝, 此时shutdown已经清空了executor, 换到新的线程池重试
+     */
+    private void submit(Runnable task){
+        for (;;){
+            ThreadPoolExecutor executor = executor();
+            try {
+                executor.execute(task);
+                return;
+            }catch (RejectedExecutionException ex){
+                if (!executor.isShutdown()){
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        return current.get() == this;
+    }
+
+    @Override
+    public int getQueueSize() {
+        ThreadPoolExecutor executor = this.executor;
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    @Override
+    public int getActiveCount() {
+        ThreadPoolExecutor executor = this.executor;
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    @Override
+    public int getPoolSize() {
+        ThreadPoolExecutor executor = this.executor;
+        return executor != null ? executor.getPoolSize() : 0;
+    }
+
+    /**
+     * 是否可以在当前线程上直接执行指定优先级的任务, 而不经过队列
+     * 按优先级执行时, 如果队列中的第一个任务应该排在前面, 则需要派发, 避免低优先级的执行链在线程上连续执行而让高优先级的任务等待
+     * @param priority 优先级
+     * @return 是否可以直接执行
+     */
+    boolean canFuse(Priority priority){
+        ThreadPoolExecutor executor = this.executor;
+        if (agingNanos < 0 || executor == null){
+            return true;
+        }
+        Runnable head = executor.getQueue().peek();
+        if (!(head instanceof PriorityTask)){
+            return true;
+        }
+        long key = System.nanoTime() - priority.ordinal() * agingNanos;
+        return key - ((PriorityTask) head).key < 0;
+    }
+
+    /**
+     * 没有正在执行和排队的任务
+     * @return 是否空闲
+     */
+    boolean isIdle(){
+        ThreadPoolExecutor executor = this.executor;
+        //先检查队列, 正在执行的任务会先把下一步放入队列再结束
+        return executor == null || (executor.getQueue().isEmpty() && executor.getActiveCount() == 0);
+    }
+
+    /**
+     * 关闭线程池, 已提交的任务会继续执行
+     * 先清空executor再关闭, 被拒绝的execute重试时会创建新的线程池
+     */
+    synchronized void shutdown(){
+        ThreadPoolExecutor executor = this.executor;
+        if (executor != null){
+            this.executor = null;
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                current.set(PoolScheduler.this);
+                runnable.run();
+            }
+        }, name + "-" + threadIndex.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * 优先级队列中的任务
+     */
+    private static final class PriorityTask implements Runnable, Comparable<PriorityTask> {
+        private final Runnable task;
+        private final long key;
+        private final long sequence;
+
+        PriorityTask(Runnable task, long key, long sequence){
+            this.task = task;
+            this.key = key;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PriorityTask other) {
+            //nanoTime可能为负数, 通过相减比较
+            long diff = key - other.key;
+            if (diff != 0){
+                return diff < 0 ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
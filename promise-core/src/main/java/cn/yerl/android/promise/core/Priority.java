@@ -0,0 +1,22 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 异步步骤的优先级
+ * 只对内置的异步线程池生效, 线程池忙碌时优先级高的步骤先执行; 等待时间越长的步骤优先级越高, 因此低优先级的步骤不会一直等待.
+ * 未指定优先级的步骤继承上一步的优先级.
+ * Created by Alan Yeh on 2017/10/12.
+ */
+public enum Priority {
+    /**
+     * 低优先级, 如预加载、日志写入等
+     */
+    LOW,
+    /**
+     * 默认优先级
+     */
+    NORMAL,
+    /**
+     * 高优先级, 如用户正在等待的图片解码等
+     */
+    HIGH
+}
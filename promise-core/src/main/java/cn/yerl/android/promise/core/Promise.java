@@ -1,14 +1,14 @@
 package cn.yerl.android.promise.core;
 
-import android.os.Handler;
-import android.os.Looper;
-
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Android Promise
@@ -17,8 +17,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @since 16/3/17
  */
 public class Promise<R> {
-    static final ExecutorService barrier = Executors.newSingleThreadExecutor();
-    static final ExecutorService threadPool = Executors.newFixedThreadPool(3);
+    /// 异步线程池, 按优先级执行, 每一级优先级相当于等待100毫秒
+    static final PoolScheduler threadPool = new PoolScheduler("promise-async", 3, 100);
     public enum State{
         /**
          * 等待状态
@@ -37,7 +37,7 @@ public class Promise<R> {
     public static Object Void;
 
 
-    private State state;
+    private volatile State state;
     /**
      * Promise 当前状态
      * @return State
@@ -75,870 +75,1729 @@ public class Promise<R> {
     }
 
     /**
-     * 未执行的Handler
+     * 执行链中间的步骤在结果被下游接收之后是否释放结果, 之后拼接的步骤会继承
+     * 在拼接到上游之前写入
      */
-    private List<PromiseResolver> handlers = new ArrayList<>();
-
-    /// 用于返回主线程
-    private static Handler handler = new Handler(Looper.getMainLooper());
+    boolean releaseConsumed;
 
     /**
-     * 创建一个空的Promise
+     * 当前执行链在结果被下游接收之后释放结果
+     * 对当前Promise(如果是then/error/always返回的中间步骤)以及之后从它拼接的步骤生效, 不影响其它执行链.
+     * 开启后, 轮询等长时间存在的执行链不会再持有每一步的中间结果. 但已经释放结果的Promise,
+     * getResult()将返回null, 之后再拼接的回调也只能收到null.
+     * 由构造函数、resolved等直接创建的Promise不受影响. 需要在拼接下游之前调用.
+     * resolved返回的缓存实例(null、TRUE、FALSE)被所有执行链共用, 不会被修改, 而是返回一个开启了该模式的副本, 因此应该使用返回值继续拼接
+     * @return 开启了该模式的Promise
      */
-    public Promise(){
-        this.state = State.Fulfilled;
+    public Promise<R> releaseConsumedResults(){
+        if (this == NULL || this == TRUE || this == FALSE){
+            Promise<R> copy = new Promise<>(this.result, null);
+            copy.releaseConsumed = true;
+            return copy;
+        }
+        this.releaseConsumed = true;
+        return this;
     }
 
     /**
-     * 拼接Promise
-     * 如果当前Promise还没有执行,则拼接在当前Promise的执行栈中
-     * 如果当前Promise已经执行了,则直接将当前Promise的值传给下一个执行者
-     * @param resolver 回调
+     * 优先级, 为null时表示默认优先级
+     * 在拼接到上游之前写入, 之后不再修改
      */
-    public void pipe(PromiseResolver<R> resolver){
-        if (this.state == State.Pending){
-            this.handlers.add(resolver);
-        }else {
-            resolver.resolve(result, error);
-        }
+    Priority priority;
+
+    /**
+     * 异步步骤的优先级, 未指定时继承上一步的优先级
+     * @return Priority
+     */
+    public Priority getPriority(){
+        Priority priority = this.priority;
+        return priority != null ? priority : Priority.NORMAL;
     }
 
     /**
-     * 创建一个Promise,并拼接在Promise(self)的执行链中
-     * @param self Promise
-     * @param piper 水管
-     * @param <R> 返回值类型
-     * @return Promise
+     * 未执行的Handler, 以无锁栈的方式保存
+     * 当Promise结束后, 指向SETTLED, 之后的pipe将直接执行
      */
-    private <A, R> Promise<R> __pipe(final Promise<A> self, final Piper<A, R> piper){
-        return new Promise<>(new PromiseCallbackWithResolver<A, R>() {
-            @Override
-            public void call(A arg, final PromiseResolver<R> resolver) {
-                self.pipe(new PromiseResolver<A>() {
-                    @Override
-                    public void resolve(A result, RuntimeException error) {
-                        piper.pipe(result, error, resolver);
-                    }
-                });
-            }
-        });
+    private volatile Node handlers;
+
+    /**
+     * 是否已经开始结算, 只有第一个将其从0改为1的调用者可以写入结果
+     */
+    private volatile int settling;
+
+    /**
+     * 上游的Promise, 结算后清空
+     * 当前Promise在上游结束之前被取消(或超时)时, 会通知上游少了一个观察者
+     */
+    private volatile Promise<?> upstream;
+
+    /**
+     * 拼接在当前Promise上的下游数量, 减为0时说明没有人再关心当前Promise的结果, 可以取消
+     */
+    private volatile int observers;
+
+    private static final AtomicReferenceFieldUpdater<Promise, Node> HANDLERS =
+            AtomicReferenceFieldUpdater.newUpdater(Promise.class, Node.class, "handlers");
+    private static final AtomicIntegerFieldUpdater<Promise> SETTLING =
+            AtomicIntegerFieldUpdater.newUpdater(Promise.class, "settling");
+    private static final AtomicIntegerFieldUpdater<Promise> OBSERVERS =
+            AtomicIntegerFieldUpdater.newUpdater(Promise.class, "observers");
+
+    private static final Node SETTLED = new Node(null);
+
+    /// 等待返回的Promise结束时, 同一个线程上最多嵌套结算的层数
+    private static final int MAX_NESTED_ADOPTION = 32;
+
+    /// 当前线程上嵌套结算的层数, 以及超过层数之后等待结算的任务
+    private static final ThreadLocal<Adoption> adoption = new ThreadLocal<Adoption>() {
+        @Override
+        protected Adoption initialValue() {
+            return new Adoption();
+        }
+    };
+
+    private static final class Adoption {
+        int depth;
+        final ArrayDeque<Runnable> pending = new ArrayDeque<>();
     }
 
-    private interface Piper<A, R>{
-        void pipe(A arg, RuntimeException error, PromiseResolver<R> resolver);
+    private static final class Node {
+        final PromiseResolver resolver;
+        Node next;
+
+        Node(PromiseResolver resolver){
+            this.resolver = resolver;
+        }
     }
 
+    /// 非异步回调默认使用的调度器
+    private static volatile Scheduler defaultScheduler = Schedulers.main();
+
+    /// 异步回调默认使用的调度器
+    private static volatile Scheduler defaultAsyncScheduler = threadPool;
+
     /**
-     * 创建一个未执行的Promise
-     * @param callback PromiseCallbackWithResolver
-     * @param <A> 参数类型
+     * 设置非异步回调(then/error/always及构造函数)默认使用的调度器, 默认为主线程
+     * @param scheduler 调度器
      */
-    public <A> Promise(final PromiseCallbackWithResolver<A, R> callback){
-        this.state = State.Pending;
-
-        final PromiseResolver<R> finalResolver = new PromiseResolver<R>() {
-            @Override
-            public void resolve(final R result, final RuntimeException error) {
-                final List<PromiseResolver> nextPromises = new ArrayList<>();
+    public static void setDefaultScheduler(Scheduler scheduler){
+        if (scheduler == null){
+            throw new IllegalArgumentException("scheduler不能为空");
+        }
+        defaultScheduler = scheduler;
+    }
 
-                //保证执行链的顺序执行
-                final CountDownLatch signal = new CountDownLatch(1);
-                Promise.barrier.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        //race
-                        if (Promise.this.getState() == State.Pending){
-                            nextPromises.addAll(Promise.this.handlers);
-
-                            Promise.this.result = result;
-                            Promise.this.error = error;
-                            Promise.this.state = error != null ? State.Rejected : State.Fulfilled;
-                        }
-                        signal.countDown();
-                    }
-                });
+    /**
+     * 获取非异步回调默认使用的调度器
+     * @return Scheduler
+     */
+    public static Scheduler getDefaultScheduler(){
+        return defaultScheduler;
+    }
 
-                try { signal.await(); } catch (InterruptedException e) {}
+    /**
+     * 设置异步回调(thenAsync/errorAsync/alwaysAsync)默认使用的调度器
+     * @param scheduler 调度器
+     */
+    public static void setDefaultAsyncScheduler(Scheduler scheduler){
+        if (scheduler == null){
+            throw new IllegalArgumentException("scheduler不能为空");
+        }
+        defaultAsyncScheduler = scheduler;
+    }
 
-                for (PromiseResolver next : nextPromises){
-                    next.resolve(result, error);
-                }
-            }
-        };
+    /**
+     * 获取异步回调默认使用的调度器
+     * @return Scheduler
+     */
+    public static Scheduler getDefaultAsyncScheduler(){
+        return defaultAsyncScheduler;
+    }
 
-        final PromiseResolver<R> resolver = new PromiseResolver<R>() {
-            @Override
-            public void resolve(R result, RuntimeException error) {
-                if (result != null && error != null){
-                    throw new IllegalArgumentException("不允许同时返回结果和错误, 这将导至计算无法继续");
-                }
-                //保证Promise的结果不变性, 如果当前状态不是Pending, 则抛弃结果
-                if (Promise.this.state == State.Pending){
-                    if (result instanceof Promise){
-                        ((Promise<R>)result).pipe(finalResolver);
-                    }else {
-                        finalResolver.resolve(result, error);
-                    }
-                }
-            }
-        };
+    /// 在同一个线程上连续直接执行的最大步骤数
+    private static volatile int maxFusionDepth = 16;
 
-        //创建Promise之后, 直接开始执行任务
-        this.handler.post(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    callback.call(null, resolver);
-                }catch (RuntimeException ex){
-                    finalResolver.resolve(null, ex);
-                }
-            }
-        });
+    /**
+     * 设置在同一个线程上连续直接执行的最大步骤数, 默认为16
+     * 上一步结束时, 或者拼接在已经结束的Promise上时, 如果下一步的调度器就是当前线程所属的调度器(如连续的thenAsync、
+     * 在主线程上连续的then), 下一步直接在当前线程执行, 不再派发; 两种情况共用同一个计数, 连续直接执行的步骤超过该数量时
+     * 重新派发, 以限制调用栈的深度, 递归拼接的执行链也不会栈溢出.
+     * 为0时每一步都会派发
+     * @param depth 最大步骤数
+     */
+    public static void setMaxFusionDepth(int depth){
+        if (depth < 0){
+            throw new IllegalArgumentException("depth不能小于0");
+        }
+        maxFusionDepth = depth;
     }
 
     /**
-     * 创建延迟执行的Promise,使用Resolver回调
-     * @param delayMillis 延迟时间，毫秒
-     * @param callback PromiseCallbackWithResolver
-     * @param <A> 参数类型
+     * 在同一个线程上连续直接执行的最大步骤数
+     * @return 最大步骤数
      */
-    public <A> Promise(final long delayMillis, final PromiseCallbackWithResolver<A, R> callback){
-        this(new PromiseCallbackWithResolver<A, R>() {
-            @Override
-            public void call(final A arg, final PromiseResolver<R> resolver) {
-                Promise.handler.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            callback.call(arg, resolver);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                }, delayMillis);
-            }
-        });
+    public static int getMaxFusionDepth(){
+        return maxFusionDepth;
     }
 
     /**
-     * 创建延迟执行的Promise
-     * @param delayMillis 延迟时间，毫秒
-     * @param callback PromiseCallback
-     * @param <A> 参数类型
+     * 关闭内置的线程池(异步、计算、IO、并行计算)以及普通JVM环境下默认的主线程事件循环, 已提交的任务会继续执行
+     * 内置的线程池都是在第一次使用时才创建的守护线程, 一般不需要手动关闭; 主要用于测试和基准测试中释放线程.
+     * 关闭之后再使用, 会重新创建线程池和事件循环; 与shutdown同时提交的任务也不会被拒绝.
+     * 通过Schedulers.setMainDispatcher设置的派发器(如Android主线程)不会被关闭
      */
-    public <A> Promise(final long delayMillis, final PromiseCallback<A, R> callback){
-        this(new PromiseCallbackWithResolver<Object, R>() {
-            @Override
-            public void call(final Object arg, final PromiseResolver<R> resolver) {
-                Promise.handler.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        try{
-                            resolver.resolve(callback.call((A)arg), null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                }, delayMillis);
-            }
-        });
+    public static void shutdown(){
+        threadPool.shutdown();
+        Schedulers.COMPUTE.shutdown();
+        Schedulers.IO.shutdown();
+        ParallelPromise.shutdownPool();
+        MainScheduler.INSTANCE.shutdown();
     }
 
     /**
-     * 创建延迟执行的Promise
-     * @param delayMillis 延迟时间，毫秒
-     * @param callback PromiseVoidArgCallback
-     * @param <A> 参数类型
+     * 等待内置的线程池以及默认的主线程事件循环中没有正在执行和排队的任务
+     * 定时器中还没有到期的任务(thenDelay、timeout等)不会等待; Android主线程无法判断, 也不会等待
+     * @param timeoutMillis 最长等待时间，毫秒
+     * @return 是否已经空闲, 超时返回false
+     * @throws InterruptedException 等待时被中断
      */
-    public <A> Promise(final long delayMillis, final PromiseVoidArgCallback<R> callback){
-        this(new PromiseCallbackWithResolver<A, R>() {
-            @Override
-            public void call(Object arg, final PromiseResolver resolver) {
-                Promise.handler.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            resolver.resolve(callback.call(), null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                }, delayMillis);
+    public static boolean awaitQuiescence(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        //任务在一个调度器结束前可能把下一步派发到另一个调度器, 连续两次检查都空闲才认为已经空闲
+        int idleRounds = 0;
+        while (idleRounds < 2){
+            if (isQuiescent()){
+                idleRounds ++;
+            }else {
+                idleRounds = 0;
             }
-        });
+            if (System.nanoTime() - deadline > 0){
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    private static boolean isQuiescent(){
+        return threadPool.isIdle() && Schedulers.COMPUTE.isIdle() && Schedulers.IO.isIdle()
+                && ParallelPromise.isPoolQuiescent() && MainScheduler.INSTANCE.isIdle();
     }
 
     /**
-     * 主线程执行的Promise
-     * @param callback PromiseCallback
-     * @param <A> 参数类型
+     * 创建一个空的Promise
      */
-    public <A> Promise(final PromiseCallback<A, R> callback){
-        this(new PromiseCallbackWithResolver<Object, R>() {
-            @Override
-            public void call(Object arg, PromiseResolver<R> resolver) {
-                try {
-                    resolver.resolve(callback.call((A)arg), null);
-                }catch (RuntimeException ex){
-                    resolver.resolve(null, ex);
-                }
-            }
-        });
+    public Promise(){
+        this.state = State.Fulfilled;
+        this.settling = 1;
+        this.handlers = SETTLED;
     }
 
     /**
-     * 获取一个Rejected状态的Promise
+     * 创建一个已经结束的Promise, 不需要任何派发
+     * handlers最后写入, 保证pipe看到SETTLED时一定能看到结果
+     * @param result 结果
      * @param error 错误
-     * @param <N> 返回值类型
      */
-    public <N> Promise(final RuntimeException error){
-        this(new PromiseCallbackWithResolver<Object, R>() {
-            @Override
-            public void call(Object arg, PromiseResolver<R> resolver) {
-                resolver.resolve(null, error);
-            }
-        });
+    private Promise(R result, RuntimeException error){
+        this.result = result;
+        this.error = error;
+        this.state = error != null ? State.Rejected : State.Fulfilled;
+        this.settling = 1;
+        this.handlers = SETTLED;
     }
 
-
     /**
-     * 直接返回promise
-     * @param promise Promise
-     * @param <R> 返回值类型
-     * @return Promise
+     * 创建一个Pending状态的Promise, 由内部直接结算, 不需要派发
+     * @param state 状态
      */
-    public static <R> Promise<R> resolve(Promise<R> promise){
-        return promise;
+    Promise(State state){
+        this.state = state;
     }
 
+    private static final Promise NULL = new Promise<>(null, null);
+    private static final Promise<Boolean> TRUE = new Promise<>(Boolean.TRUE, null);
+    private static final Promise<Boolean> FALSE = new Promise<>(Boolean.FALSE, null);
+
     /**
-     * 返回一个Fulfilled状态的Promise
+     * 返回一个已经是Fulfilled状态的Promise
+     * 与resolve不同的是, 它在创建时就已经结束, 不需要派发到主线程.
+     * null(包括Promise.Void)、TRUE、FALSE会返回缓存的实例
      * @param result 结果
      * @param <R> 返回值类型
      * @return Promise
      */
-    public static <R> Promise<R> resolve(final R result){
-        return new Promise<>(new PromiseCallbackWithResolver<Object, R>(){
-            @Override
-            public void call(Object arg, PromiseResolver<R> resolver) {
-                resolve(result);
-            }
-        });
+    @SuppressWarnings("unchecked")
+    public static <R> Promise<R> resolved(R result){
+        if (result == null){
+            return (Promise<R>) NULL;
+        }
+        if (result instanceof Boolean){
+            return (Promise<R>) (((Boolean) result) ? TRUE : FALSE);
+        }
+        return new Promise<>(result, null);
     }
 
     /**
-     * 返回一个Rejected状态的Promise
-     * @param ex 错误
-     * @param <A> 参数类型
+     * 返回一个已经是Rejected状态的Promise, 不需要派发到主线程
+     * @param error 错误
      * @param <R> 返回值类型
      * @return Promise
      */
-    public static <A, R> Promise<R> resolve(final RuntimeException ex){
-        return new Promise<>(new PromiseCallbackWithResolver<A, R>(){
-            @Override
-            public void call(A arg, PromiseResolver<R> resolver) {
-                resolver.resolve(null, ex);
-            }
-        });
+    public static <R> Promise<R> rejected(RuntimeException error){
+        if (error == null){
+            throw new IllegalArgumentException("error不能为空");
+        }
+        return new Promise<>(null, error);
     }
 
     /**
-     * 包装一系列的Promise对象,返回一个包装后的Promise对象,称之为A
-     * 1. 当所有的Promise对象都变成成功态(Fulfilled)后,这个包装后的A才会把自己变成成功状态.
-     *    A会等最慢的那个Promise对象变成成功态(Fulfilled)后才把自己变成成功态.
-     * 2. 只要其中一个Promise对象变成失败态(Rejected),包装后的A就会变成Rejected,并且每一个Rejected传递的值,
-     *    会传递给A后面的catch
-     * @param promises List of promise
-     * @param <A> 参数类型
+     * 创建一个延迟执行的Promise
+     * 与构造函数不同, 创建时不会执行任务, 直到第一次调用then、pipe等方法拼接下游时才开始执行, 之后的结果会被保存,
+     * 不会重复执行. 可以先组装好执行链, 只为真正用到的部分付出代价.
+     * @param callback PromiseCallbackWithResolver
      * @param <R> 返回值类型
      * @return Promise
      */
-
-    public static <A, R> Promise<List<R>> all(final List<Promise<R>> promises){
-        return new Promise<>(new PromiseCallbackWithResolver<A, List<R>>() {
-            @Override
-            public void call(A arg, final PromiseResolver<List<R>> resolver) {
-                final AtomicInteger totalCount = new AtomicInteger(promises.size());
-                for (Promise<R> promise : promises){
-                    promise.pipe(new PromiseResolver<R>() {
-                        @Override
-                        public void resolve(R result, RuntimeException error) {
-                            if (error != null){
-                                resolver.resolve(null, new RuntimeException("one of promise in promises was rejected", error));
-                            }else if (totalCount.decrementAndGet() == 0){
-                                List<R> results = new ArrayList<>(promises.size());
-                                for (Promise<R> promise : promises){
-                                    results.add(promise.result);
-                                }
-                                resolver.resolve(results, null);
-                            }
-                        }
-                    });
-                }
-            }
-        });
+    public static <R> Promise<R> defer(final PromiseCallbackWithResolver<Object, R> callback){
+        if (callback == null){
+            throw new IllegalArgumentException("callback不能为空");
+        }
+        return new LazyPromise<>(callback);
     }
 
     /**
-     * 包装一列列的Promise对象,返回一个包装后的Promise对象,称之为R
-     * 1. 只要其中的一个Promise对象变成成功态(Fulfilled)后,这个包装后的R就会变成成功态(Fulfilled).
-     * 2. 当所有的promise对象都变成失败态(Rejected)后,这个包装后的R才会变成失败态.
-     * @param promises List of promise
-     * @param <A> 参数类型
+     * 创建一个延迟执行的Promise
+     * 直到第一次调用then、pipe等方法拼接下游时才开始执行
+     * @param callback PromiseVoidArgCallback
      * @param <R> 返回值类型
      * @return Promise
      */
-    public static <A, R> Promise<R> race(final List<Promise<R>> promises) {
-        return new Promise<>(new PromiseCallbackWithResolver<A, R>() {
+    public static <R> Promise<R> defer(final PromiseVoidArgCallback<R> callback){
+        if (callback == null){
+            throw new IllegalArgumentException("callback不能为空");
+        }
+        return new LazyPromise<>(new PromiseCallbackWithResolver<Object, R>() {
             @Override
-            public void call(A arg, final PromiseResolver<R> resolver) {
-                final AtomicInteger totalCount = new AtomicInteger(promises.size());
-                for (Promise<R> promise : promises) {
-                    promise.pipe(new PromiseResolver<R>() {
-                        @Override
-                        public void resolve(R result, RuntimeException ex) {
-                            if (ex == null) {
-                                resolver.resolve(result, null);
-                            } else if (totalCount.decrementAndGet() == 0) {
-//                                List<RuntimeException> errors = new ArrayList<>();
-//                                for (Promise<R> promise : promises){
-//                                    errors.add(promise.getError());
-//                                }
-                                resolver.resolve(null, new RuntimeException("all promise were rejected."));
-                            }
-                        }
-                    });
-                }
+            public void call(Object arg, PromiseResolver<R> resolver) {
+                resolver.resolve(callback.call(), null);
             }
         });
     }
 
     /**
-     * 主线程执行
-     * @param then next step
-     * @param <N> 新的返回值类型
-     * @return Promise
+     * 拼接Promise
+     * 如果当前Promise还没有执行,则拼接在当前Promise的执行栈中
+     * 如果当前Promise已经执行了,则直接将当前Promise的值传给下一个执行者
+     * 拼接的resolver会被计为一个观察者, 因此当前Promise不会因为其它下游被取消而被取消
+     * @param resolver 回调
      */
-    public <N> Promise<N> then(final PromiseCallback<R, N> then){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(then.call(arg), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }
-            }
-        });
+    public void pipe(PromiseResolver<R> resolver){
+        onSubscribe();
+        retain();
+        listen(resolver);
     }
 
     /**
-     * 主线程执行
-     * @param then next step
+     * 拼接Promise, 与pipe不同, 不会增加观察者计数, 由调用者自行通过observe或retain管理
+     * @param resolver 回调
      */
-    public void then(final PromiseVoidReturnCallback<R> then){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call(arg);
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }
-            }
-        });
+    void subscribe(PromiseResolver<R> resolver){
+        onSubscribe();
+        listen(resolver);
     }
 
     /**
-     * 主线程执行
-     * @param then next step
+     * 添加监听者, 与pipe不同, 不会触发延迟执行的Promise开始执行
+     * @param resolver 回调
      */
-    public void then(final PromiseVoidArgVoidReturnCallback then){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call();
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }
+    private void listen(PromiseResolver<R> resolver){
+        Node node = null;
+        for (;;){
+            Node head = this.handlers;
+            if (head == SETTLED){
+                //结果已在替换为SETTLED之前写入, 此处可以直接读取
+                resolver.resolve(result, error);
+                return;
             }
-        });
+            if (node == null){
+                node = new Node(resolver);
+            }
+            node.next = head;
+            if (HANDLERS.compareAndSet(this, head, node)){
+                return;
+            }
+        }
     }
 
     /**
-     * 主线程执行
-     * @param then next step
-     * @param <N> 返回值类型
-     * @return Promise
+     * 结算Promise
+     * 只有第一次结算会生效, 结算后取出所有等待的Handler并按注册顺序执行
+     * 如果上游还没有结束(当前Promise被取消或超时), 则释放对上游的观察
+     * @param result 结果
+     * @param error 错误
+     * @return 是否由本次调用完成结算
      */
-    public <N> Promise<N> then(final PromiseVoidArgCallback<N> then){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(then.call(), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }
+    boolean settle(R result, RuntimeException error){
+        if (!SETTLING.compareAndSet(this, 0, 1)){
+            return false;
+        }
+        this.result = result;
+        this.error = error;
+        this.state = error != null ? State.Rejected : State.Fulfilled;
+
+        Promise<?> upstream = this.upstream;
+        if (upstream != null){
+            this.upstream = null;
+            upstream.unobserve();
+        }
+
+        Node head = HANDLERS.getAndSet(this, SETTLED);
+
+        //栈是后进先出的, 翻转之后按注册顺序执行
+        Node ordered = null;
+        while (head != null){
+            Node next = head.next;
+            head.next = ordered;
+            ordered = head;
+            head = next;
+        }
+        for (Node node = ordered; node != null; node = node.next){
+            if (node.next != null && node.resolver instanceof Continuation){
+                //有多个下游时, 只有最后一个可以在当前线程上直接执行, 其余的派发出去并行执行
+                ((Continuation<R, ?>) node.resolver).receive(result, error, false);
+            }else {
+                node.resolver.resolve(result, error);
             }
-        });
+        }
+
+        if (ordered != null && releaseConsumed && isIntermediate()){
+            this.result = null;
+        }
+        return true;
     }
 
+    /**
+     * 将下游拼接在当前Promise之后, 下游取消时可以向上传递
+     * @param downstream 下游
+     */
+    void observe(Promise<?> downstream){
+        retain();
+        downstream.upstream = this;
+    }
 
     /**
-     * 主线程执行,使用 Resolver来回调
-     * @param then next step
-     * @param <N> 返回值类型
-     * @return Promise
+     * 增加一个观察者, 用于同时观察多个Promise的组合(如all), 需要与unobserve配对
      */
-    public <N> Promise<N> then(final PromiseCallbackWithResolver<R, N> then){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.this.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call(arg, resolver);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }
-            }
-        });
+    void retain(){
+        //已经结束的Promise不会再被取消, 不需要计数, 也避免了NULL等共享的Promise上的竞争
+        if (this.handlers != SETTLED){
+            OBSERVERS.incrementAndGet(this);
+        }
     }
 
     /**
-     * 异步执行
-     * @param then next step
-     * @param <N> 返回值类型
-     * @return Promise
+     * 减少一个观察者, 与unobserve不同, 即使没有其它下游也不会取消当前Promise
      */
-    public <N> Promise<N> thenAsync(final PromiseCallback<R, N> then){
-        return __pipe(this, new Piper<R, N>() {
+    void release(){
+        if (this.state == State.Pending){
+            OBSERVERS.decrementAndGet(this);
+        }
+    }
+
+    /**
+     * 创建一个观察当前Promise的子Promise, 用于把同一个Promise分发给多个调用者
+     * 每个调用者取消自己的子Promise时不会影响其它调用者, 所有子Promise都被取消之后才会取消当前Promise
+     * @return 子Promise, 当前Promise已经结束时直接返回当前Promise
+     */
+    Promise<R> derive(){
+        if (this.handlers == SETTLED){
+            return this;
+        }
+        final Promise<R> child = new Promise<>(State.Pending);
+        child.priority = this.priority;
+        this.observe(child);
+        this.subscribe(new PromiseResolver<R>() {
+            @Override
+            public void resolve(R result, RuntimeException error) {
+                child.settle(result, error);
+            }
+        });
+        return child;
+    }
+
+    /**
+     * 下游已经结束, 不再关心当前Promise的结果
+     * 如果当前Promise还没有结束且没有其它下游, 则取消当前Promise
+     */
+    void unobserve(){
+        if (this.state == State.Pending && OBSERVERS.decrementAndGet(this) == 0){
+            cancel();
+        }
+    }
+
+    /**
+     * 取消
+     * 以CancellationException结束当前Promise, 之后的then不会再执行, error、always会收到CancellationException.
+     * 如果上游还没有结束, 且没有其它下游在等待上游的结果, 则上游也会被取消,
+     * 因此排队中的任务、等待中的thenDelay以及通过onCancel注册的网络请求等都会被取消.
+     * @return 是否取消成功, 如果Promise已经结束则返回false
+     */
+    public boolean cancel(){
+        if (this.state != State.Pending){
+            return false;
+        }
+        if (!settle(null, new CancellationException("promise was cancelled"))){
+            return false;
+        }
+        onCancelled();
+        return true;
+    }
+
+    /**
+     * 是否已被取消
+     * 上游被取消时, 下游也会以CancellationException结束, 同样视为已取消
+     * @return 是否已被取消
+     */
+    public boolean isCancelled(){
+        return this.state == State.Rejected && this.error instanceof CancellationException;
+    }
+
+    /**
+     * 取消时执行, 用于停止Promise背后的工作, 例如网络请求
+     * 在调用cancel的线程中执行
+     * @param callback 回调
+     * @return 当前Promise
+     */
+    public Promise<R> onCancel(final Runnable callback){
+        listen(new PromiseResolver<R>() {
             @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(then.call(arg), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
+            public void resolve(R result, RuntimeException error) {
+                if (error instanceof CancellationException){
+                    callback.run();
                 }
             }
         });
+        return this;
     }
 
     /**
-     * 异步执行
-     * @param then next step
+     * 绑定CancellationToken
+     * CancellationToken被取消时, 取消当前Promise; 当前Promise被取消时, 也会取消CancellationToken
+     * @param token CancellationToken
+     * @return 当前Promise
+     */
+    public Promise<R> withToken(final CancellationToken token){
+        final Runnable cancel = new Runnable() {
+            @Override
+            public void run() {
+                cancel();
+            }
+        };
+        token.register(cancel);
+        listen(new PromiseResolver<R>() {
+            @Override
+            public void resolve(R result, RuntimeException error) {
+                token.unregister(cancel);
+                if (error instanceof CancellationException){
+                    token.cancel();
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * 被取消之后执行, 用于释放回调、取消定时器等
+     */
+    void onCancelled(){
+    }
+
+    /**
+     * 有新的监听者拼接到当前Promise时执行, 延迟执行的Promise在第一次被拼接时开始执行任务
+     */
+    void onSubscribe(){
+    }
+
+    /**
+     * 是否为执行链中间的步骤, 只有中间步骤会在结果被接收之后释放结果
+     * @return 是否为中间步骤
+     */
+    boolean isIntermediate(){
+        return false;
+    }
+
+    /**
+     * 创建一个Continuation,并拼接在当前Promise的执行链中
+     * 如果当前Promise已经结束, 则直接交给Continuation处理, 不需要再派发一次
+     * @param scheduler 调度器
+     * @param mode 执行时机(then/error/always)
+     * @param kind 回调类型
+     * @param callback 回调
+     * @param delayMillis 延迟时间，毫秒
      * @param <N> 返回值类型
      * @return Promise
      */
-    public <N> Promise<N> thenAsync(final PromiseVoidArgCallback<N> then){
-        return __pipe(this, new Piper<R, N>() {
+    private <N> Promise<N> __pipe(Scheduler scheduler, int mode, int kind, Object callback, long delayMillis){
+        return __pipe(scheduler, mode, kind, callback, delayMillis, null);
+    }
+
+    /**
+     * 创建一个指定优先级的Continuation,并拼接在当前Promise的执行链中
+     * @param priority 优先级, 为null时继承当前Promise的优先级
+     */
+    private <N> Promise<N> __pipe(Scheduler scheduler, int mode, int kind, Object callback, long delayMillis, Priority priority){
+        Continuation<R, N> next = new Continuation<>(scheduler, mode, kind, callback, delayMillis);
+        next.priority = priority != null ? priority : this.priority;
+        next.releaseConsumed = this.releaseConsumed;
+        if (this.handlers == SETTLED){
+            next.receive(this.result, this.error, true);
+        }else {
+            this.observe(next);
+            this.subscribe(next);
+        }
+        return next;
+    }
+
+    /**
+     * 结束当前Promise
+     * 如果结果是一个Promise, 则等待该Promise结束后再结算
+     * @param result 结果
+     * @param error 错误
+     */
+    void complete(R result, RuntimeException error){
+        if (result != null && error != null){
+            throw new IllegalArgumentException("不允许同时返回结果和错误, 这将导至计算无法继续");
+        }
+        //保证Promise的结果不变性, 如果当前状态不是Pending, 则抛弃结果
+        if (this.state == State.Pending){
+            if (result instanceof Promise){
+                //等待返回的Promise时被取消, 返回的Promise也可以被取消
+                ((Promise<R>)result).observe(this);
+                ((Promise<R>)result).subscribe(new PromiseResolver<R>() {
+                    @Override
+                    public void resolve(R result, RuntimeException error) {
+                        adopt(result, error);
+                    }
+                });
+            }else {
+                settle(result, error);
+            }
+        }
+    }
+
+    /**
+     * 以返回的Promise的结果结算
+     * 递归返回Promise时(如循环中每一步都返回下一步的Promise), 最内层结束时会逐层结算外层, 嵌套可能非常深.
+     * 同一个线程上嵌套超过MAX_NESTED_ADOPTION层之后, 剩下的结算放入队列, 由最外层依次执行, 避免调用栈溢出
+     */
+    private void adopt(final R result, final RuntimeException error){
+        Adoption adoption = Promise.adoption.get();
+        if (adoption.depth >= MAX_NESTED_ADOPTION){
+            adoption.pending.add(new Runnable() {
+                @Override
+                public void run() {
+                    settle(result, error);
+                }
+            });
+            return;
+        }
+        adoption.depth ++;
+        try {
+            settle(result, error);
+        }finally {
+            adoption.depth --;
+        }
+        if (adoption.depth == 0){
+            Runnable next;
+            while ((next = adoption.pending.poll()) != null){
+                adoption.depth ++;
+                try {
+                    next.run();
+                }finally {
+                    adoption.depth --;
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建用于结束当前Promise的Resolver
+     * @return PromiseResolver
+     */
+    PromiseResolver<R> newResolver(){
+        return new PromiseResolver<R>() {
+            @Override
+            public void resolve(R result, RuntimeException error) {
+                complete(result, error);
+            }
+        };
+    }
+
+    /**
+     * 延迟一段时间之后, 在指定的调度器上执行任务
+     * 所有延迟任务共用同一个时间轮定时器, 定时器线程只负责派发
+     * @param scheduler 调度器
+     * @param task 任务
+     * @param delayMillis 延迟时间，毫秒
+     * @return Timeout, 可用于取消任务
+     */
+    static HashedWheelTimer.Timeout executeDelayed(final Scheduler scheduler, final Runnable task, long delayMillis){
+        return HashedWheelTimer.INSTANCE.schedule(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.execute(task);
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * 创建一个未执行的Promise
+     * @param callback PromiseCallbackWithResolver
+     * @param <A> 参数类型
+     */
+    public <A> Promise(final PromiseCallbackWithResolver<A, R> callback){
+        this.state = State.Pending;
+
+        //创建Promise之后, 直接开始执行任务
+        execute(callback);
+    }
+
+    /**
+     * 在默认调度器上执行任务, 任务通过Resolver结束当前Promise
+     * @param callback PromiseCallbackWithResolver
+     * @param <A> 参数类型
+     */
+    <A> void execute(final PromiseCallbackWithResolver<A, R> callback){
+        final PromiseResolver<R> resolver = newResolver();
+        defaultScheduler.execute(new Runnable() {
             @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(then.call(), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
+            public void run() {
+                //在排队时已经被取消
+                if (state != State.Pending){
+                    return;
+                }
+                try {
+                    callback.call(null, resolver);
+                }catch (RuntimeException ex){
+                    settle(null, ex);
                 }
             }
         });
     }
 
     /**
-     * 异步执行
-     * @param then next step
+     * 创建延迟执行的Promise,使用Resolver回调
+     * @param delayMillis 延迟时间，毫秒
+     * @param callback PromiseCallbackWithResolver
+     * @param <A> 参数类型
      */
-    public void thenAsync(final PromiseVoidReturnCallback<R> then){
-        __pipe(this, new Piper<R, Object>() {
+    public <A> Promise(final long delayMillis, final PromiseCallbackWithResolver<A, R> callback){
+        this(State.Pending);
+        final PromiseResolver<R> resolver = newResolver();
+        delay(delayMillis, new Runnable() {
             @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call(arg);
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
+            public void run() {
+                try {
+                    callback.call(null, resolver);
+                }catch (RuntimeException ex){
+                    settle(null, ex);
                 }
             }
         });
     }
 
     /**
-     * 异步执行
-     * @param then next step
+     * 创建延迟执行的Promise
+     * @param delayMillis 延迟时间，毫秒
+     * @param callback PromiseCallback
+     * @param <A> 参数类型
      */
-    public void thenAsync(final PromiseVoidArgVoidReturnCallback then){
-        __pipe(this, new Piper<R, Object>() {
+    public <A> Promise(final long delayMillis, final PromiseCallback<A, R> callback){
+        this(State.Pending);
+        delay(delayMillis, new Runnable() {
             @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call();
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
+            public void run() {
+                try{
+                    complete(callback.call(null), null);
+                }catch (RuntimeException ex){
+                    settle(null, ex);
                 }
             }
         });
     }
 
     /**
-     * 异步执行,使用Resolver来回调
-     * @param then next step
-     * @param <N> 返回值类型
-     * @return Promise
+     * 创建延迟执行的Promise
+     * @param delayMillis 延迟时间，毫秒
+     * @param callback PromiseVoidArgCallback
+     * @param <A> 参数类型
      */
-    public <N> Promise<N> thenAsync(final PromiseCallbackWithResolver<R, N> then){
-        return __pipe(this, new Piper<R, N>() {
+    public <A> Promise(final long delayMillis, final PromiseVoidArgCallback<R> callback){
+        this(State.Pending);
+        delay(delayMillis, new Runnable() {
             @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call(arg, resolver);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
+            public void run() {
+                try {
+                    complete(callback.call(), null);
+                }catch (RuntimeException ex){
+                    settle(null, ex);
                 }
             }
         });
     }
 
     /**
-     * 延迟执行
+     * 延迟一段时间之后在默认调度器上执行任务, 被取消时同时取消定时器
      * @param delayMillis 延迟时间，毫秒
-     * @param then 下一步
+     * @param task 任务
+     */
+    private void delay(long delayMillis, final Runnable task){
+        final HashedWheelTimer.Timeout timeout = executeDelayed(defaultScheduler, new Runnable() {
+            @Override
+            public void run() {
+                if (state == State.Pending){
+                    task.run();
+                }
+            }
+        }, delayMillis);
+        onCancel(new Runnable() {
+            @Override
+            public void run() {
+                timeout.cancel();
+            }
+        });
+    }
+
+    /**
+     * 主线程执行的Promise
+     * @param callback PromiseCallback
+     * @param <A> 参数类型
+     */
+    public <A> Promise(final PromiseCallback<A, R> callback){
+        this(new PromiseCallbackWithResolver<Object, R>() {
+            @Override
+            public void call(Object arg, PromiseResolver<R> resolver) {
+                try {
+                    resolver.resolve(callback.call((A)arg), null);
+                }catch (RuntimeException ex){
+                    resolver.resolve(null, ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取一个Rejected状态的Promise, 创建时就已经结束
+     * @param error 错误
      * @param <N> 返回值类型
+     */
+    public <N> Promise(final RuntimeException error){
+        this(null, error);
+    }
+
+
+    /**
+     * 直接返回promise
+     * @param promise Promise
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<R> resolve(Promise<R> promise){
+        return promise;
+    }
+
+    /**
+     * 返回一个Fulfilled状态的Promise
+     * @param result 结果
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<R> resolve(final R result){
+        return resolved(result);
+    }
+
+    /**
+     * 返回一个Rejected状态的Promise
+     * @param ex 错误
+     * @param <A> 参数类型
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <A, R> Promise<R> resolve(final RuntimeException ex){
+        return rejected(ex);
+    }
+
+    /**
+     * 包装一系列的Promise对象,返回一个包装后的Promise对象,称之为A
+     * 1. 当所有的Promise对象都变成成功态(Fulfilled)后,这个包装后的A才会把自己变成成功状态.
+     *    A会等最慢的那个Promise对象变成成功态(Fulfilled)后才把自己变成成功态.
+     * 2. 只要其中一个Promise对象变成失败态(Rejected),包装后的A就会变成Rejected,并且第一个Rejected传递的值,
+     *    会传递给A后面的catch
+     * @param promises List of promise
+     * @param <A> 参数类型
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <A, R> Promise<List<R>> all(final List<Promise<R>> promises){
+        return all(promises, false);
+    }
+
+    /**
+     * 包装一系列的Promise对象, 与all(List)相同
+     * @param promises Promise数组
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    @SafeVarargs
+    public static <R> Promise<List<R>> all(final Promise<R>... promises){
+        if (promises == null){
+            throw new IllegalArgumentException("promises不能为空");
+        }
+        return all(Arrays.asList(promises), false);
+    }
+
+    /**
+     * 包装一系列的Promise对象, 与all(List)相同
+     * @param promises Promise集合
+     * @param <R> 返回值类型
      * @return Promise
      */
-    public <N> Promise<N> thenDelay(final long delayMillis, final PromiseCallback<R, N> then){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.this.handler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(then.call(arg), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    }, delayMillis);
-                }
-            }
-        });
+    public static <R> Promise<List<R>> all(final Iterable<? extends Promise<R>> promises){
+        return all(promises, false);
+    }
+
+    /**
+     * 包装一系列的Promise对象, 与all(List)相同
+     * 结果按位置保存在预先分配好的数组中, 只有第一个Rejected会结束包装后的Promise.
+     * @param promises Promise集合, Collection与数组不会被复制, 其它Iterable会先复制为List
+     * @param cancelOnFailure 第一个Promise失败(或包装后的Promise被取消)时, 是否取消其它还没有结束的Promise.
+     *                        只会取消没有其它下游在等待的Promise
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<List<R>> all(final Iterable<? extends Promise<R>> promises, boolean cancelOnFailure){
+        return combine(promises, CombinedPromise.ALL, cancelOnFailure);
+    }
+
+    /**
+     * 等待所有的Promise结束, 无论成功还是失败
+     * 返回的Promise总是成功, 结果按位置保存每一个Promise的PromiseOutcome
+     * @param promises List of promise
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<List<PromiseOutcome<R>>> allSettled(final List<Promise<R>> promises){
+        return combine(promises, CombinedPromise.ALL_SETTLED, false);
+    }
+
+    /**
+     * 等待所有的Promise结束, 与allSettled(List)相同
+     * @param promises Promise数组
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    @SafeVarargs
+    public static <R> Promise<List<PromiseOutcome<R>>> allSettled(final Promise<R>... promises){
+        if (promises == null){
+            throw new IllegalArgumentException("promises不能为空");
+        }
+        return combine(Arrays.asList(promises), CombinedPromise.ALL_SETTLED, false);
+    }
+
+    /**
+     * 等待所有的Promise结束, 与allSettled(List)相同
+     * @param promises Promise集合
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<List<PromiseOutcome<R>>> allSettled(final Iterable<? extends Promise<R>> promises){
+        return combine(promises, CombinedPromise.ALL_SETTLED, false);
+    }
+
+    /**
+     * 取第一个成功的Promise的结果
+     * 1. 只要其中的一个Promise对象变成成功态(Fulfilled), 返回的Promise就以它的结果结束.
+     * 2. 当所有的Promise对象都变成失败态(Rejected)后, 返回的Promise以PromiseAggregateException结束, 其中按位置保存了每一个错误.
+     * @param promises List of promise
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<R> any(final List<Promise<R>> promises){
+        return combine(promises, CombinedPromise.ANY, false);
+    }
+
+    /**
+     * 取第一个成功的Promise的结果, 与any(List)相同
+     * @param promises Promise数组
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    @SafeVarargs
+    public static <R> Promise<R> any(final Promise<R>... promises){
+        if (promises == null){
+            throw new IllegalArgumentException("promises不能为空");
+        }
+        return combine(Arrays.asList(promises), CombinedPromise.ANY, false);
+    }
+
+    /**
+     * 取第一个成功的Promise的结果, 与any(List)相同
+     * @param promises Promise集合, Collection与数组不会被复制, 其它Iterable会先复制为List
+     * @param cancelOnSuccess 第一个Promise成功(或返回的Promise被取消)时, 是否取消其它还没有结束的Promise.
+     *                        只会取消没有其它下游在等待的Promise
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<R> any(final Iterable<? extends Promise<R>> promises, boolean cancelOnSuccess){
+        return combine(promises, CombinedPromise.ANY, cancelOnSuccess);
+    }
+
+    /**
+     * 将每一个输入转换为Promise, 并保持同时执行的Promise不超过maxConcurrency个
+     * 每结束一个Promise才会从输入中取下一个, 因此输入可以很大, 而不会一次性创建所有的Promise.
+     * 返回的Promise的结果与输入的顺序一致; 任何一个Promise失败时, 返回的Promise以该错误结束,
+     * 不再取新的输入, 并取消正在执行的Promise.
+     * mapper在上一个Promise结束的线程中执行, 应该只负责发起任务
+     * @param items 输入
+     * @param maxConcurrency 最大并发数
+     * @param mapper 将输入转换为Promise
+     * @param <A> 输入类型
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <A, R> Promise<List<R>> map(final Iterable<? extends A> items, int maxConcurrency, final PromiseCallback<A, Promise<R>> mapper){
+        return map(items, maxConcurrency, mapper, true);
+    }
+
+    /**
+     * 与map相同, 但结果按Promise结束的顺序保存, 不需要保存还没有轮到的结果
+     * @param items 输入
+     * @param maxConcurrency 最大并发数
+     * @param mapper 将输入转换为Promise
+     * @param <A> 输入类型
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <A, R> Promise<List<R>> mapUnordered(final Iterable<? extends A> items, int maxConcurrency, final PromiseCallback<A, Promise<R>> mapper){
+        return map(items, maxConcurrency, mapper, false);
+    }
+
+    private static <A, R> Promise<List<R>> map(Iterable<? extends A> items, int maxConcurrency, PromiseCallback<A, Promise<R>> mapper, boolean ordered){
+        if (items == null || mapper == null){
+            throw new IllegalArgumentException("items和mapper不能为空");
+        }
+        if (maxConcurrency <= 0){
+            throw new IllegalArgumentException("maxConcurrency必须大于0");
+        }
+        MapPromise<A, R> map = new MapPromise<>(items, maxConcurrency, mapper, ordered);
+        map.drain();
+        return map;
+    }
+
+    /**
+     * 并行地转换每一个输入, 再合并为一个结果
+     * 输入按数量切分为若干段, 在计算线程中执行, 每一段依次转换、合并, 不会为每一个输入创建Promise, 适用于解析、计算哈希等CPU密集型任务.
+     * Android 5.0及以上使用ForkJoinPool, 空闲的线程会窃取其它线程还没有执行的段.
+     * reducer需要满足结合律, 合并的顺序与输入的顺序一致; 输入为空时结果为null. 任何一个转换或合并失败时, 返回的Promise以该错误结束.
+     * @param items 输入
+     * @param mapper 转换
+     * @param reducer 合并
+     * @param <A> 输入类型
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <A, R> Promise<R> parallel(final Collection<? extends A> items, final PromiseCallback<A, R> mapper, final PromiseReducer<R, R> reducer){
+        if (items == null || mapper == null || reducer == null){
+            throw new IllegalArgumentException("items、mapper和reducer不能为空");
+        }
+        ParallelPromise<A, R> parallel = new ParallelPromise<>(items, mapper, reducer);
+        parallel.start();
+        return parallel;
+    }
+
+    /**
+     * 失败时按重试策略重试
+     * supplier在默认调度器上执行, 每次调用都应该创建一个新的上游; 失败之后通过共用的定时器等待, 不会占用任何线程.
+     * 所有的尝试都结算到返回的Promise上, 重试不会增加执行链的长度. 超过最多次数时, 以最后一次的错误结束.
+     * @param policy 重试策略
+     * @param supplier 创建上游
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <R> Promise<R> retry(final RetryPolicy policy, final PromiseVoidArgCallback<Promise<R>> supplier){
+        if (policy == null || supplier == null){
+            throw new IllegalArgumentException("policy和supplier不能为空");
+        }
+        RetryPromise<R> retry = new RetryPromise<>(policy, supplier, defaultScheduler);
+        defaultScheduler.execute(retry);
+        return retry;
+    }
+
+    /**
+     * 按结束的顺序发出每一个Promise的结果
+     * 每一个Promise结束时就可以处理它的结果, 不需要等待最慢的那个. 回调在默认调度器上执行
+     * @param promises Promise集合
+     * @param <R> 结果类型
+     * @return PromiseStream
+     */
+    public static <R> PromiseStream<R> inCompletionOrder(final Iterable<? extends Promise<R>> promises){
+        if (promises == null){
+            throw new IllegalArgumentException("promises不能为空");
+        }
+        return PromiseStream.inCompletionOrder(promises, defaultScheduler);
+    }
+
+    /**
+     * 组合多个Promise
+     * @param promises Promise集合, Collection与数组不会被复制, 其它Iterable会先复制为List
+     * @param mode 组合方式
+     * @param cancelOnFailure 提前结束时是否取消其它还没有结束的Promise
+     * @param <R> 每个Promise的返回值类型
+     * @param <T> 组合之后的返回值类型
+     * @return Promise
+     */
+    private static <R, T> Promise<T> combine(final Iterable<? extends Promise<R>> promises, int mode, boolean cancelOnFailure){
+        if (promises == null){
+            throw new IllegalArgumentException("promises不能为空");
+        }
+        Collection<? extends Promise<R>> collection;
+        if (promises instanceof Collection){
+            collection = (Collection<? extends Promise<R>>) promises;
+        }else {
+            List<Promise<R>> list = new ArrayList<>();
+            for (Promise<R> promise : promises){
+                list.add(promise);
+            }
+            collection = list;
+        }
+        CombinedPromise<R, T> combined = new CombinedPromise<>(collection, mode, cancelOnFailure);
+        combined.start();
+        return combined;
+    }
+
+    /**
+     * 包装一列列的Promise对象,返回一个包装后的Promise对象,称之为R
+     * 1. 只要其中的一个Promise对象变成成功态(Fulfilled)后,这个包装后的R就会变成成功态(Fulfilled).
+     * 2. 当所有的promise对象都变成失败态(Rejected)后,这个包装后的R才会变成失败态, 错误为PromiseAggregateException.
+     * 与any(List)相同
+     * @param promises List of promise
+     * @param <A> 参数类型
+     * @param <R> 返回值类型
+     * @return Promise
+     */
+    public static <A, R> Promise<R> race(final List<Promise<R>> promises) {
+        return any(promises);
+    }
+
+    /**
+     * 主线程执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> then(final PromiseCallback<R, N> then){
+        return thenOn(defaultScheduler, then);
+    }
+
+    /**
+     * 主线程执行
+     * @param then next step
+     */
+    public void then(final PromiseVoidReturnCallback<R> then){
+        thenOn(defaultScheduler, then);
+    }
+
+    /**
+     * 主线程执行
+     * @param then next step
+     */
+    public void then(final PromiseVoidArgVoidReturnCallback then){
+        thenOn(defaultScheduler, then);
+    }
+
+    /**
+     * 主线程执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> then(final PromiseVoidArgCallback<N> then){
+        return thenOn(defaultScheduler, then);
+    }
+
+    /**
+     * 主线程执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> then(final PromiseCallbackWithResolver<R, N> then){
+        return thenOn(defaultScheduler, then);
+    }
+
+    /**
+     * 异步执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsync(final PromiseCallback<R, N> then){
+        return thenOn(defaultAsyncScheduler, then);
+    }
+
+    /**
+     * 异步执行
+     * @param then next step
+     */
+    public void thenAsync(final PromiseVoidReturnCallback<R> then){
+        thenOn(defaultAsyncScheduler, then);
+    }
+
+    /**
+     * 异步执行
+     * @param then next step
+     */
+    public void thenAsync(final PromiseVoidArgVoidReturnCallback then){
+        thenOn(defaultAsyncScheduler, then);
+    }
+
+    /**
+     * 异步执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsync(final PromiseVoidArgCallback<N> then){
+        return thenOn(defaultAsyncScheduler, then);
+    }
+
+    /**
+     * 异步执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsync(final PromiseCallbackWithResolver<R, N> then){
+        return thenOn(defaultAsyncScheduler, then);
+    }
+
+    /**
+     * 按指定的优先级异步执行, 之后的步骤默认继承该优先级
+     * @param priority 优先级
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsync(final Priority priority, final PromiseCallback<R, N> then){
+        return __pipe(defaultAsyncScheduler, Continuation.THEN, Continuation.CALLBACK, then, 0, priority);
+    }
+
+    /**
+     * 按指定的优先级异步执行
+     * @param priority 优先级
+     * @param then next step
+     */
+    public void thenAsync(final Priority priority, final PromiseVoidReturnCallback<R> then){
+        __pipe(defaultAsyncScheduler, Continuation.THEN, Continuation.VOID_RETURN, then, 0, priority);
+    }
+
+    /**
+     * 按指定的优先级异步执行
+     * @param priority 优先级
+     * @param then next step
+     */
+    public void thenAsync(final Priority priority, final PromiseVoidArgVoidReturnCallback then){
+        __pipe(defaultAsyncScheduler, Continuation.THEN, Continuation.VOID_ARG_VOID_RETURN, then, 0, priority);
+    }
+
+    /**
+     * 按指定的优先级异步执行, 之后的步骤默认继承该优先级
+     * @param priority 优先级
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsync(final Priority priority, final PromiseVoidArgCallback<N> then){
+        return __pipe(defaultAsyncScheduler, Continuation.THEN, Continuation.VOID_ARG, then, 0, priority);
+    }
+
+    /**
+     * 按指定的优先级异步执行, 之后的步骤默认继承该优先级
+     * @param priority 优先级
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsync(final Priority priority, final PromiseCallbackWithResolver<R, N> then){
+        return __pipe(defaultAsyncScheduler, Continuation.THEN, Continuation.WITH_RESOLVER, then, 0, priority);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenCompute(final PromiseCallback<R, N> then){
+        return thenOn(Schedulers.compute(), then);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行
+     * @param then next step
+     */
+    public void thenCompute(final PromiseVoidReturnCallback<R> then){
+        thenOn(Schedulers.compute(), then);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行
+     * @param then next step
+     */
+    public void thenCompute(final PromiseVoidArgVoidReturnCallback then){
+        thenOn(Schedulers.compute(), then);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenCompute(final PromiseVoidArgCallback<N> then){
+        return thenOn(Schedulers.compute(), then);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenCompute(final PromiseCallbackWithResolver<R, N> then){
+        return thenOn(Schedulers.compute(), then);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenIO(final PromiseCallback<R, N> then){
+        return thenOn(Schedulers.io(), then);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行
+     * @param then next step
+     */
+    public void thenIO(final PromiseVoidReturnCallback<R> then){
+        thenOn(Schedulers.io(), then);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行
+     * @param then next step
+     */
+    public void thenIO(final PromiseVoidArgVoidReturnCallback then){
+        thenOn(Schedulers.io(), then);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenIO(final PromiseVoidArgCallback<N> then){
+        return thenOn(Schedulers.io(), then);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenIO(final PromiseCallbackWithResolver<R, N> then){
+        return thenOn(Schedulers.io(), then);
+    }
+
+    /**
+     * 上一步的结果为Collection时, 并行地转换其中每一个元素, 再合并为一个结果
+     * @see #parallel(Collection, PromiseCallback, PromiseReducer)
+     * @param mapper 转换
+     * @param reducer 合并
+     * @param <A> 元素类型
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    @SuppressWarnings("unchecked")
+    public <A, N> Promise<N> thenParallel(final PromiseCallback<A, N> mapper, final PromiseReducer<N, N> reducer){
+        if (mapper == null || reducer == null){
+            throw new IllegalArgumentException("mapper和reducer不能为空");
+        }
+        //返回的Promise会被展开, 只负责发起并行计算, 因此直接在结算的线程中执行
+        return (Promise<N>) thenOn(Schedulers.immediate(), new PromiseCallback<R, Object>() {
+            @Override
+            public Object call(R arg) {
+                return parallel((Collection<? extends A>) arg, mapper, reducer);
+            }
+        });
+    }
+
+    /**
+     * 在指定的调度器上执行
+     * @param scheduler 调度器
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenOn(final Scheduler scheduler, final PromiseCallback<R, N> then){
+        return __pipe(scheduler, Continuation.THEN, Continuation.CALLBACK, then, 0);
+    }
+
+    /**
+     * 在指定的调度器上执行
+     * @param scheduler 调度器
+     * @param then next step
+     */
+    public void thenOn(final Scheduler scheduler, final PromiseVoidReturnCallback<R> then){
+        __pipe(scheduler, Continuation.THEN, Continuation.VOID_RETURN, then, 0);
+    }
+
+    /**
+     * 在指定的调度器上执行
+     * @param scheduler 调度器
+     * @param then next step
+     */
+    public void thenOn(final Scheduler scheduler, final PromiseVoidArgVoidReturnCallback then){
+        __pipe(scheduler, Continuation.THEN, Continuation.VOID_ARG_VOID_RETURN, then, 0);
+    }
+
+    /**
+     * 在指定的调度器上执行
+     * @param scheduler 调度器
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenOn(final Scheduler scheduler, final PromiseVoidArgCallback<N> then){
+        return __pipe(scheduler, Continuation.THEN, Continuation.VOID_ARG, then, 0);
+    }
+
+    /**
+     * 在指定的调度器上执行
+     * @param scheduler 调度器
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenOn(final Scheduler scheduler, final PromiseCallbackWithResolver<R, N> then){
+        return __pipe(scheduler, Continuation.THEN, Continuation.WITH_RESOLVER, then, 0);
+    }
+
+    /**
+     * 限流之后异步执行
+     * 获取不到令牌时在定时器中等待, 不会占用线程池中的线程
+     * @param limiter 限流器
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsyncRateLimited(final RateLimiter limiter, final PromiseCallback<R, N> then){
+        return thenOn(limiter.limit(defaultAsyncScheduler), then);
+    }
+
+    /**
+     * 限流之后异步执行
+     * 获取不到令牌时在定时器中等待, 不会占用线程池中的线程
+     * @param limiter 限流器
+     * @param then next step
+     */
+    public void thenAsyncRateLimited(final RateLimiter limiter, final PromiseVoidReturnCallback<R> then){
+        thenOn(limiter.limit(defaultAsyncScheduler), then);
+    }
+
+    /**
+     * 限流之后异步执行
+     * 获取不到令牌时在定时器中等待, 不会占用线程池中的线程
+     * @param limiter 限流器
+     * @param then next step
+     */
+    public void thenAsyncRateLimited(final RateLimiter limiter, final PromiseVoidArgVoidReturnCallback then){
+        thenOn(limiter.limit(defaultAsyncScheduler), then);
+    }
+
+    /**
+     * 限流之后异步执行
+     * 获取不到令牌时在定时器中等待, 不会占用线程池中的线程
+     * @param limiter 限流器
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsyncRateLimited(final RateLimiter limiter, final PromiseVoidArgCallback<N> then){
+        return thenOn(limiter.limit(defaultAsyncScheduler), then);
+    }
+
+    /**
+     * 限流之后异步执行
+     * 获取不到令牌时在定时器中等待, 不会占用线程池中的线程
+     * @param limiter 限流器
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenAsyncRateLimited(final RateLimiter limiter, final PromiseCallbackWithResolver<R, N> then){
+        return thenOn(limiter.limit(defaultAsyncScheduler), then);
+    }
+
+    /**
+     * 延迟执行
+     * @param delayMillis 延迟时间，毫秒
+     * @param then 下一步
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenDelay(final long delayMillis, final PromiseCallback<R, N> then){
+        return __pipe(defaultScheduler, Continuation.THEN, Continuation.CALLBACK, then, delayMillis);
+    }
+
+    /**
+     * 延迟执行
+     * @param delayMillis 延迟时间，毫秒
+     * @param then 下一步
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenDelay(final long delayMillis, final PromiseVoidArgCallback<N> then){
+        return __pipe(defaultScheduler, Continuation.THEN, Continuation.VOID_ARG, then, delayMillis);
+    }
+
+    /**
+     * 延迟执行
+     * @param delayMillis 延迟时间，毫秒
+     * @param then 下一步
+     */
+    public void thenDelay(final long delayMillis, final PromiseVoidReturnCallback<R> then){
+        __pipe(defaultScheduler, Continuation.THEN, Continuation.VOID_RETURN, then, delayMillis);
+    }
+
+    /**
+     * 延迟执行
+     * @param delayMillis 延迟时间，毫秒
+     * @param then 下一步
+     */
+    public void thenDelay(final long delayMillis, final PromiseVoidArgVoidReturnCallback then){
+        __pipe(defaultScheduler, Continuation.THEN, Continuation.VOID_ARG_VOID_RETURN, then, delayMillis);
+    }
+
+    /**
+     * 延迟执行,使用Resolver回调
+     * @param delayMillis delay time
+     * @param then next step
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> thenDelay(final long delayMillis, final PromiseCallbackWithResolver<R, N> then) {
+        return __pipe(defaultScheduler, Continuation.THEN, Continuation.WITH_RESOLVER, then, delayMillis);
+    }
+
+    /**
+     * 超时
+     * 如果当前Promise在指定时间内没有结束, 则返回的Promise以PromiseTimeoutException结束
+     * 当前Promise先结束时, 定时器会被取消; 超时时, 如果没有其它下游等待当前Promise, 当前Promise会被取消
+     * @param timeoutMillis 超时时间，毫秒
+     * @return Promise
+     */
+    public Promise<R> timeout(final long timeoutMillis){
+        return timeout(timeoutMillis, null);
+    }
+
+    /**
+     * 超时
+     * 如果当前Promise在指定时间内没有结束, 则在默认调度器上执行fallback, 并以fallback的结果结束
+     * 当前Promise先结束时, 定时器会被取消; 超时时, 如果没有其它下游等待当前Promise, 当前Promise会被取消
+     * @param timeoutMillis 超时时间，毫秒
+     * @param fallback 超时之后的备用结果, 为null时以PromiseTimeoutException结束
+     * @return Promise
+     */
+    public Promise<R> timeout(final long timeoutMillis, final PromiseVoidArgCallback<R> fallback){
+        if (this.handlers == SETTLED){
+            return this;
+        }
+
+        final Promise<R> next = new Promise<>(State.Pending);
+        this.observe(next);
+        final HashedWheelTimer.Timeout timeout = executeDelayed(defaultScheduler, new Runnable() {
+            @Override
+            public void run() {
+                if (next.state != State.Pending){
+                    return;
+                }
+                if (fallback == null){
+                    next.settle(null, new PromiseTimeoutException(timeoutMillis));
+                    return;
+                }
+                try {
+                    next.complete(fallback.call(), null);
+                }catch (RuntimeException ex){
+                    next.settle(null, ex);
+                }
+            }
+        }, timeoutMillis);
+
+        this.subscribe(new PromiseResolver<R>() {
+            @Override
+            public void resolve(R result, RuntimeException error) {
+                timeout.cancel();
+                next.settle(result, error);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * 同步处理错误
+     * @param callback error handler
+     * @return Promise
+     */
+    public Promise<R> error(final PromiseCallback<RuntimeException, R> callback){
+        return errorOn(defaultScheduler, callback);
+    }
+
+    /**
+     * 同步处理错误
+     * @param callback error handler
+     * @return Promise
+     */
+    public Promise<R> error(final PromiseVoidArgCallback<R> callback){
+        return errorOn(defaultScheduler, callback);
+    }
+
+    /**
+     * 同步处理错误
+     * @param callback error handler
+     */
+    public void error(final PromiseVoidReturnCallback<RuntimeException> callback){
+        errorOn(defaultScheduler, callback);
+    }
+
+    /**
+     * 同步处理错误
+     * @param callback error handler
+     */
+    public void error(final PromiseVoidArgVoidReturnCallback callback){
+        errorOn(defaultScheduler, callback);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中处理错误
+     * @param callback error handler
+     * @return Promise
+     */
+    public Promise<R> errorCompute(final PromiseCallback<RuntimeException, R> callback){
+        return errorOn(Schedulers.compute(), callback);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中处理错误
+     * @param callback error handler
+     * @return Promise
+     */
+    public Promise<R> errorCompute(final PromiseVoidArgCallback<R> callback){
+        return errorOn(Schedulers.compute(), callback);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中处理错误
+     * @param callback error handler
+     */
+    public void errorCompute(final PromiseVoidReturnCallback<RuntimeException> callback){
+        errorOn(Schedulers.compute(), callback);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中处理错误
+     * @param callback error handler
+     */
+    public void errorCompute(final PromiseVoidArgVoidReturnCallback callback){
+        errorOn(Schedulers.compute(), callback);
     }
 
     /**
-     * 延迟执行
-     * @param delayMillis 延迟时间，毫秒
-     * @param then 下一步
-     * @param <N> 返回值类型
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中处理错误
+     * @param callback error handler
      * @return Promise
      */
-    public <N> Promise<N> thenDelay(final long delayMillis, final PromiseVoidArgCallback<N> then){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.this.handler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(then.call(), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    }, delayMillis);
-                }
-            }
-        });
+    public Promise<R> errorIO(final PromiseCallback<RuntimeException, R> callback){
+        return errorOn(Schedulers.io(), callback);
     }
 
     /**
-     * 延迟执行
-     * @param delayMillis 延迟时间，毫秒
-     * @param then 下一步
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中处理错误
+     * @param callback error handler
+     * @return Promise
      */
-    public void thenDelay(final long delayMillis, final PromiseVoidReturnCallback<R> then){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.this.handler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call(arg);
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    }, delayMillis);
-                }
-            }
-        });
+    public Promise<R> errorIO(final PromiseVoidArgCallback<R> callback){
+        return errorOn(Schedulers.io(), callback);
     }
 
     /**
-     * 延迟执行
-     * @param delayMillis 延迟时间，毫秒
-     * @param then 下一步
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中处理错误
+     * @param callback error handler
      */
-    public void thenDelay(final long delayMillis, final PromiseVoidArgVoidReturnCallback then){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.this.handler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call();
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    }, delayMillis);
-                }
-            }
-        });
+    public void errorIO(final PromiseVoidReturnCallback<RuntimeException> callback){
+        errorOn(Schedulers.io(), callback);
     }
 
     /**
-     * 延迟执行,使用Resolver回调
-     * @param delayMillis delay time
-     * @param then next step
-     * @param <N> 返回值类型
-     * @return Promise
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中处理错误
+     * @param callback error handler
      */
-    public <N> Promise<N> thenDelay(final long delayMillis, final PromiseCallbackWithResolver<R, N> then) {
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, RuntimeException error, final PromiseResolver<N> resolver) {
-                if (error != null){
-                    resolver.resolve(null, error);
-                }else {
-                    Promise.this.handler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                then.call(arg, resolver);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    }, delayMillis);
-                }
-            }
-        });
-	}
+    public void errorIO(final PromiseVoidArgVoidReturnCallback callback){
+        errorOn(Schedulers.io(), callback);
+    }
 
     /**
-     * 同步处理错误
+     * 按指定的优先级异步处理错误, 之后的步骤默认继承该优先级
+     * @param priority 优先级
      * @param callback error handler
      * @return Promise
      */
-    public Promise<R> error(final PromiseCallback<RuntimeException, R> callback){
-        return __pipe(this, new Piper<R, R>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<R> resolver) {
-                if (error != null){
-                    Promise.this.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(callback.call(error), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+    public Promise<R> errorAsync(final Priority priority, final PromiseCallback<RuntimeException, R> callback){
+        return __pipe(defaultAsyncScheduler, Continuation.ERROR, Continuation.CALLBACK, callback, 0, priority);
     }
 
     /**
-     * 同步处理错误
+     * 按指定的优先级异步处理错误, 之后的步骤默认继承该优先级
+     * @param priority 优先级
      * @param callback error handler
      * @return Promise
      */
-    public Promise<R> error(final PromiseVoidArgCallback<R> callback){
-        return __pipe(this, new Piper<R, R>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<R> resolver) {
-                if (error != null){
-                    Promise.this.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(callback.call(), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+    public Promise<R> errorAsync(final Priority priority, final PromiseVoidArgCallback<R> callback){
+        return __pipe(defaultAsyncScheduler, Continuation.ERROR, Continuation.VOID_ARG, callback, 0, priority);
     }
 
     /**
-     * 同步处理错误
+     * 按指定的优先级异步处理错误
+     * @param priority 优先级
      * @param callback error handler
      */
-    public void error(final PromiseVoidReturnCallback<RuntimeException> callback){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    Promise.this.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                callback.call(error);
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+    public void errorAsync(final Priority priority, final PromiseVoidReturnCallback<RuntimeException> callback){
+        __pipe(defaultAsyncScheduler, Continuation.ERROR, Continuation.VOID_RETURN, callback, 0, priority);
     }
 
     /**
-     * 同步处理错误
+     * 按指定的优先级异步处理错误
+     * @param priority 优先级
      * @param callback error handler
      */
-    public void error(final PromiseVoidArgVoidReturnCallback callback){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    Promise.this.handler.post(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                callback.call();
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+    public void errorAsync(final Priority priority, final PromiseVoidArgVoidReturnCallback callback){
+        __pipe(defaultAsyncScheduler, Continuation.ERROR, Continuation.VOID_ARG_VOID_RETURN, callback, 0, priority);
     }
 
     /**
@@ -947,25 +1806,7 @@ public class Promise<R> {
      * @return Promise
      */
     public Promise<R> errorAsync(final PromiseCallback<RuntimeException, R> callback){
-        return __pipe(this, new Piper<R, R>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<R> resolver) {
-                if (error != null){
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(callback.call(error), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+        return errorOn(defaultAsyncScheduler, callback);
     }
 
     /**
@@ -974,25 +1815,7 @@ public class Promise<R> {
      * @return Promise
      */
     public Promise<R> errorAsync(final PromiseVoidArgCallback<R> callback){
-        return __pipe(this, new Piper<R, R>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<R> resolver) {
-                if (error != null){
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                resolver.resolve(callback.call(), null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+        return errorOn(defaultAsyncScheduler, callback);
     }
 
     /**
@@ -1000,26 +1823,7 @@ public class Promise<R> {
      * @param callback error handler
      */
     public void errorAsync(final PromiseVoidReturnCallback<RuntimeException> callback){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(R arg, final RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                callback.call(error);
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+        errorOn(defaultAsyncScheduler, callback);
     }
 
     /**
@@ -1027,26 +1831,45 @@ public class Promise<R> {
      * @param callback error handler
      */
     public void errorAsync(final PromiseVoidArgVoidReturnCallback callback){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(R arg, final RuntimeException error, final PromiseResolver<Object> resolver) {
-                if (error != null){
-                    threadPool.execute(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                callback.call();
-                                resolver.resolve(null, null);
-                            } catch (RuntimeException ex) {
-                                resolver.resolve(null, ex);
-                            }
-                        }
-                    });
-                }else {
-                    resolver.resolve(arg, null);
-                }
-            }
-        });
+        errorOn(defaultAsyncScheduler, callback);
+    }
+
+    /**
+     * 在指定的调度器上处理错误
+     * @param scheduler 调度器
+     * @param callback error handler
+     * @return Promise
+     */
+    public Promise<R> errorOn(final Scheduler scheduler, final PromiseCallback<RuntimeException, R> callback){
+        return __pipe(scheduler, Continuation.ERROR, Continuation.CALLBACK, callback, 0);
+    }
+
+    /**
+     * 在指定的调度器上处理错误
+     * @param scheduler 调度器
+     * @param callback error handler
+     * @return Promise
+     */
+    public Promise<R> errorOn(final Scheduler scheduler, final PromiseVoidArgCallback<R> callback){
+        return __pipe(scheduler, Continuation.ERROR, Continuation.VOID_ARG, callback, 0);
+    }
+
+    /**
+     * 在指定的调度器上处理错误
+     * @param scheduler 调度器
+     * @param callback error handler
+     */
+    public void errorOn(final Scheduler scheduler, final PromiseVoidReturnCallback<RuntimeException> callback){
+        __pipe(scheduler, Continuation.ERROR, Continuation.VOID_RETURN, callback, 0);
+    }
+
+    /**
+     * 在指定的调度器上处理错误
+     * @param scheduler 调度器
+     * @param callback error handler
+     */
+    public void errorOn(final Scheduler scheduler, final PromiseVoidArgVoidReturnCallback callback){
+        __pipe(scheduler, Continuation.ERROR, Continuation.VOID_ARG_VOID_RETURN, callback, 0);
     }
 
     /**
@@ -1056,21 +1879,7 @@ public class Promise<R> {
      * @return Promise
      */
     public <N> Promise<N> always(final PromiseCallback<Object, N> always){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<N> resolver) {
-                Promise.this.handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            resolver.resolve(always.call(error != null ? error : arg), null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        return alwaysOn(defaultScheduler, always);
     }
 
     /**
@@ -1080,21 +1889,7 @@ public class Promise<R> {
      * @return Promise
      */
     public <N> Promise<N> always(final PromiseVoidArgCallback<N> always){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<N> resolver) {
-                Promise.this.handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            resolver.resolve(always.call(), null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        return alwaysOn(defaultScheduler, always);
     }
 
     /**
@@ -1102,22 +1897,7 @@ public class Promise<R> {
      * @param always handle always
      */
     public void always(final PromiseVoidReturnCallback<Object> always){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<Object> resolver) {
-                Promise.this.handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            always.call(error != null ? error : arg);
-                            resolver.resolve(null, null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        alwaysOn(defaultScheduler, always);
     }
 
     /**
@@ -1125,22 +1905,119 @@ public class Promise<R> {
      * @param always handle always
      */
     public void always(final PromiseVoidArgVoidReturnCallback always){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(R arg, RuntimeException error, final PromiseResolver<Object> resolver) {
-                Promise.this.handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            always.call();
-                            resolver.resolve(null, null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        alwaysOn(defaultScheduler, always);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行,正确或失败都会执行
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysCompute(final PromiseCallback<Object, N> always){
+        return alwaysOn(Schedulers.compute(), always);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行,正确或失败都会执行
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysCompute(final PromiseVoidArgCallback<N> always){
+        return alwaysOn(Schedulers.compute(), always);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行,正确或失败都会执行
+     * @param always handle always
+     */
+    public void alwaysCompute(final PromiseVoidReturnCallback<Object> always){
+        alwaysOn(Schedulers.compute(), always);
+    }
+
+    /**
+     * 在计算线程池(线程数与CPU核心数一致)中执行,正确或失败都会执行
+     * @param always handle always
+     */
+    public void alwaysCompute(final PromiseVoidArgVoidReturnCallback always){
+        alwaysOn(Schedulers.compute(), always);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行,正确或失败都会执行
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysIO(final PromiseCallback<Object, N> always){
+        return alwaysOn(Schedulers.io(), always);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行,正确或失败都会执行
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysIO(final PromiseVoidArgCallback<N> always){
+        return alwaysOn(Schedulers.io(), always);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行,正确或失败都会执行
+     * @param always handle always
+     */
+    public void alwaysIO(final PromiseVoidReturnCallback<Object> always){
+        alwaysOn(Schedulers.io(), always);
+    }
+
+    /**
+     * 在IO线程池(按需创建线程, 空闲线程会被回收)中执行,正确或失败都会执行
+     * @param always handle always
+     */
+    public void alwaysIO(final PromiseVoidArgVoidReturnCallback always){
+        alwaysOn(Schedulers.io(), always);
+    }
+
+    /**
+     * 按指定的优先级异步执行,正确或失败都会执行, 之后的步骤默认继承该优先级
+     * @param priority 优先级
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysAsync(final Priority priority, final PromiseCallback<Object, N> always){
+        return __pipe(defaultAsyncScheduler, Continuation.ALWAYS, Continuation.CALLBACK, always, 0, priority);
+    }
+
+    /**
+     * 按指定的优先级异步执行,正确或失败都会执行, 之后的步骤默认继承该优先级
+     * @param priority 优先级
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysAsync(final Priority priority, final PromiseVoidArgCallback<N> always){
+        return __pipe(defaultAsyncScheduler, Continuation.ALWAYS, Continuation.VOID_ARG, always, 0, priority);
+    }
+
+    /**
+     * 按指定的优先级异步执行,正确或失败都会执行
+     * @param priority 优先级
+     * @param always handle always
+     */
+    public void alwaysAsync(final Priority priority, final PromiseVoidReturnCallback<Object> always){
+        __pipe(defaultAsyncScheduler, Continuation.ALWAYS, Continuation.VOID_RETURN, always, 0, priority);
+    }
+
+    /**
+     * 按指定的优先级异步执行,正确或失败都会执行
+     * @param priority 优先级
+     * @param always handle always
+     */
+    public void alwaysAsync(final Priority priority, final PromiseVoidArgVoidReturnCallback always){
+        __pipe(defaultAsyncScheduler, Continuation.ALWAYS, Continuation.VOID_ARG_VOID_RETURN, always, 0, priority);
     }
 
     /**
@@ -1150,21 +2027,7 @@ public class Promise<R> {
      * @return Promise
      */
     public <N> Promise<N> alwaysAsync(final PromiseCallback<Object, N> always){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<N> resolver) {
-                threadPool.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            resolver.resolve(always.call(error != null ? error : arg), null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        return alwaysOn(defaultAsyncScheduler, always);
     }
 
     /**
@@ -1174,21 +2037,7 @@ public class Promise<R> {
      * @return Promise
      */
     public <N> Promise<N> alwaysAsync(final PromiseVoidArgCallback<N> always){
-        return __pipe(this, new Piper<R, N>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<N> resolver) {
-                threadPool.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            resolver.resolve(always.call(), null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        return alwaysOn(defaultAsyncScheduler, always);
     }
 
     /**
@@ -1196,22 +2045,7 @@ public class Promise<R> {
      * @param always handle always
      */
     public void alwaysAsync(final PromiseVoidReturnCallback<Object> always){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<Object> resolver) {
-                threadPool.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            always.call(error != null ? error : arg);
-                            resolver.resolve(null, null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        alwaysOn(defaultAsyncScheduler, always);
     }
 
     /**
@@ -1219,21 +2053,46 @@ public class Promise<R> {
      * @param always handle always
      */
     public void alwaysAsync(final PromiseVoidArgVoidReturnCallback always){
-        __pipe(this, new Piper<R, Object>() {
-            @Override
-            public void pipe(final R arg, final RuntimeException error, final PromiseResolver<Object> resolver) {
-                threadPool.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            always.call();
-                            resolver.resolve(null, null);
-                        }catch (RuntimeException ex){
-                            resolver.resolve(null, ex);
-                        }
-                    }
-                });
-            }
-        });
+        alwaysOn(defaultAsyncScheduler, always);
+    }
+
+    /**
+     * 在指定的调度器上执行,正确或失败都会执行
+     * @param scheduler 调度器
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysOn(final Scheduler scheduler, final PromiseCallback<Object, N> always){
+        return __pipe(scheduler, Continuation.ALWAYS, Continuation.CALLBACK, always, 0);
+    }
+
+    /**
+     * 在指定的调度器上执行,正确或失败都会执行
+     * @param scheduler 调度器
+     * @param always handle always
+     * @param <N> 返回值类型
+     * @return Promise
+     */
+    public <N> Promise<N> alwaysOn(final Scheduler scheduler, final PromiseVoidArgCallback<N> always){
+        return __pipe(scheduler, Continuation.ALWAYS, Continuation.VOID_ARG, always, 0);
+    }
+
+    /**
+     * 在指定的调度器上执行,正确或失败都会执行
+     * @param scheduler 调度器
+     * @param always handle always
+     */
+    public void alwaysOn(final Scheduler scheduler, final PromiseVoidReturnCallback<Object> always){
+        __pipe(scheduler, Continuation.ALWAYS, Continuation.VOID_RETURN, always, 0);
+    }
+
+    /**
+     * 在指定的调度器上执行,正确或失败都会执行
+     * @param scheduler 调度器
+     * @param always handle always
+     */
+    public void alwaysOn(final Scheduler scheduler, final PromiseVoidArgVoidReturnCallback always){
+        __pipe(scheduler, Continuation.ALWAYS, Continuation.VOID_ARG_VOID_RETURN, always, 0);
     }
 }
@@ -0,0 +1,27 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 多个Promise都失败时的异常, 由Promise.any、Promise.race返回
+ * 按位置保存每一个Promise的错误, 第一个错误同时作为cause
+ * Created by Alan Yeh on 2017/9/27.
+ */
+
+public class PromiseAggregateException extends RuntimeException {
+    private final List<RuntimeException> errors;
+
+    public PromiseAggregateException(String message, List<RuntimeException> errors){
+        super(message, errors.isEmpty() ? null : errors.get(0));
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * 每一个Promise的错误, 与传入的Promise位置一致
+     * @return List of RuntimeException
+     */
+    public List<RuntimeException> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,313 @@
+package cn.yerl.android.promise.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Promise缓存
+ * 同一个key正在加载时, 之后的get共享正在进行的加载, 不会重复加载; 加载完成后在有效期内继续返回同一个结果.
+ * 每个调用者拿到的都是独立的Promise, 取消时不影响其它调用者, 所有调用者都取消之后才会取消加载.
+ * 超过最大数量时按最近最少使用(LRU)淘汰, 超过有效期(从加载完成时开始计算)的结果会被重新加载.
+ * 默认不缓存失败(包括被取消)的结果.
+ * @param <K> key类型
+ * @param <V> 返回值类型
+ * Created by Alan Yeh on 2017/9/30.
+ */
+public final class PromiseCache<K, V> {
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private volatile int maxEntries;
+    private volatile long ttlNanos;
+    private volatile boolean cacheRejections;
+
+    /// 以下统计由this保护
+    private long hitCount;
+    private long missCount;
+    private long loadSuccessCount;
+    private long loadFailureCount;
+    private long totalLoadTimeNanos;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries 最大数量
+     */
+    public PromiseCache(int maxEntries){
+        if (maxEntries <= 0){
+            throw new IllegalArgumentException("maxEntries必须大于0");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > PromiseCache.this.maxEntries){
+                    evictionCount ++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 设置最大数量
+     * @param maxEntries 最大数量
+     * @return PromiseCache
+     */
+    public PromiseCache<K, V> setMaxEntries(int maxEntries){
+        if (maxEntries <= 0){
+            throw new IllegalArgumentException("maxEntries必须大于0");
+        }
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * 设置有效期, 从加载完成时开始计算, 为0时不会过期
+     * @param ttlMillis 有效期，毫秒
+     * @return PromiseCache
+     */
+    public PromiseCache<K, V> setTtl(long ttlMillis){
+        if (ttlMillis < 0){
+            throw new IllegalArgumentException("ttlMillis不能小于0");
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        return this;
+    }
+
+    /**
+     * 设置是否缓存失败的结果
+     * @param cacheRejections 是否缓存失败的结果
+     * @return PromiseCache
+     */
+    public PromiseCache<K, V> setCacheRejections(boolean cacheRejections){
+        this.cacheRejections = cacheRejections;
+        return this;
+    }
+
+    /**
+     * 获取key对应的Promise, 没有缓存或已过期时通过loader加载
+     * 返回的Promise只属于当前调用者, 取消时不会影响同一个key的其它调用者
+     * @param key key
+     * @param loader 加载回调
+     * @return Promise
+     */
+    public Promise<V> get(final K key, PromiseCallback<K, Promise<V>> loader){
+        if (key == null || loader == null){
+            throw new IllegalArgumentException("key和loader不能为空");
+        }
+        final CacheEntry<V> entry;
+        Promise<V> derived;
+        synchronized (this){
+            CacheEntry<V> existing = getEntry(key);
+            if (existing != null){
+                hitCount ++;
+                return existing.promise.derive();
+            }
+            missCount ++;
+            entry = new CacheEntry<>();
+            entries.put(key, entry);
+            derived = entry.promise.derive();
+        }
+
+        final long startTime = System.nanoTime();
+        Promise<V> loaded;
+        try {
+            loaded = loader.call(key);
+        }catch (RuntimeException ex){
+            loaded = Promise.rejected(ex);
+        }
+        if (loaded == null){
+            loaded = Promise.rejected(new IllegalStateException("loader不能返回null"));
+        }
+
+        //所有调用者都取消之后缓存的Promise被取消, 如果加载没有其它下游, 也会被取消
+        loaded.observe(entry.promise);
+        loaded.subscribe(new PromiseResolver<V>() {
+            @Override
+            public void resolve(V result, RuntimeException error) {
+                loaded(key, entry, System.nanoTime() - startTime, error);
+                entry.promise.settle(result, error);
+            }
+        });
+        return derived;
+    }
+
+    /**
+     * 获取已缓存的Promise
+     * @param key key
+     * @return Promise, 没有缓存或已过期时返回null
+     */
+    public synchronized Promise<V> getIfPresent(K key){
+        CacheEntry<V> entry = getEntry(key);
+        return entry != null ? entry.promise.derive() : null;
+    }
+
+    /**
+     * 移除key对应的缓存
+     * @param key key
+     */
+    public synchronized void invalidate(K key){
+        entries.remove(key);
+    }
+
+    /**
+     * 移除所有缓存
+     */
+    public synchronized void invalidateAll(){
+        entries.clear();
+    }
+
+    /**
+     * 缓存的数量, 包括正在加载的
+     * @return 数量
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * 获取统计信息
+     * @return 当前统计信息的快照
+     */
+    public synchronized Stats stats(){
+        return new Stats(hitCount, missCount, loadSuccessCount, loadFailureCount, totalLoadTimeNanos, evictionCount);
+    }
+
+    /**
+     * 获取有效的缓存, 过期或被取消的缓存会被移除
+     */
+    private CacheEntry<V> getEntry(K key){
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null){
+            return null;
+        }
+        long ttl = ttlNanos;
+        boolean expired = ttl > 0 && entry.loaded && System.nanoTime() - entry.loadedAt > ttl;
+        if (expired || entry.promise.isCancelled()){
+            entries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 加载完成
+     */
+    private synchronized void loaded(K key, CacheEntry<V> entry, long loadTimeNanos, RuntimeException error){
+        totalLoadTimeNanos += loadTimeNanos;
+        if (error == null){
+            loadSuccessCount ++;
+        }else {
+            loadFailureCount ++;
+        }
+        if (error != null && !cacheRejections){
+            if (entries.get(key) == entry){
+                entries.remove(key);
+            }
+            return;
+        }
+        entry.loadedAt = System.nanoTime();
+        entry.loaded = true;
+    }
+
+    private static final class CacheEntry<V> {
+        private final Promise<V> promise = new Promise<>(Promise.State.Pending);
+        private boolean loaded;
+        private long loadedAt;
+    }
+
+    /**
+     * 统计信息
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long loadSuccessCount;
+        private final long loadFailureCount;
+        private final long totalLoadTimeNanos;
+        private final long evictionCount;
+
+        Stats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTimeNanos, long evictionCount){
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadSuccessCount = loadSuccessCount;
+            this.loadFailureCount = loadFailureCount;
+            this.totalLoadTimeNanos = totalLoadTimeNanos;
+            this.evictionCount = evictionCount;
+        }
+
+        /**
+         * 命中次数, 包括命中正在加载的Promise
+         * @return 命中次数
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * 未命中次数, 即加载次数
+         * @return 未命中次数
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * 加载成功次数
+         * @return 加载成功次数
+         */
+        public long getLoadSuccessCount() {
+            return loadSuccessCount;
+        }
+
+        /**
+         * 加载失败次数
+         * @return 加载失败次数
+         */
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        /**
+         * 所有加载的总耗时
+         * @return 总耗时，纳秒
+         */
+        public long getTotalLoadTimeNanos() {
+            return totalLoadTimeNanos;
+        }
+
+        /**
+         * 平均加载耗时
+         * @return 平均加载耗时，毫秒
+         */
+        public double getAverageLoadTimeMillis(){
+            long count = loadSuccessCount + loadFailureCount;
+            return count == 0 ? 0 : totalLoadTimeNanos / (double) count / 1000000;
+        }
+
+        /**
+         * 因超过最大数量而被淘汰的次数
+         * @return 淘汰次数
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * 命中率
+         * @return 命中率
+         */
+        public double getHitRate(){
+            long count = hitCount + missCount;
+            return count == 0 ? 1 : hitCount / (double) count;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hit=" + hitCount + ", miss=" + missCount + ", loadSuccess=" + loadSuccessCount
+                    + ", loadFailure=" + loadFailureCount + ", totalLoadTimeNanos=" + totalLoadTimeNanos
+                    + ", eviction=" + evictionCount + "}";
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 有容量限制的异步通道
+ * 生产者通过send发送数据, 缓冲区满时返回的Promise会一直处于Pending状态, 直到消费者取走数据, 以此实现背压;
+ * 消费者通过receive接收数据, 缓冲区为空时返回的Promise会一直处于Pending状态, 直到生产者发送数据.
+ * 缓冲区是一个环形数组, 只在drain中访问, drain通过wip计数保证同一时刻只有一个线程在执行, 因此不需要加锁.
+ * 被取消的send不会发送数据, 被取消的receive不会取走数据.
+ * @param <T> 数据类型
+ * Created by Alan Yeh on 2017/9/29.
+ */
+public final class PromiseChannel<T> {
+    private static final AtomicIntegerFieldUpdater<PromiseChannel> WIP =
+            AtomicIntegerFieldUpdater.newUpdater(PromiseChannel.class, "wip");
+
+    /// 以下字段只在drain中访问
+    private final Object[] buffer;
+    private int head;
+    private int count;
+
+    /// 等待缓冲区空出位置的发送者
+    private final Queue<Sender<T>> senders = new ConcurrentLinkedQueue<>();
+    /// 等待数据的接收者
+    private final Queue<Promise<T>> receivers = new ConcurrentLinkedQueue<>();
+
+    private volatile int wip;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity 缓冲区容量
+     */
+    public PromiseChannel(int capacity){
+        if (capacity <= 0){
+            throw new IllegalArgumentException("capacity必须大于0");
+        }
+        this.buffer = new Object[capacity];
+    }
+
+    /**
+     * 发送数据
+     * @param value 数据
+     * @return 数据放入缓冲区后结束的Promise; 通道关闭后以ClosedException结束
+     */
+    public Promise<Void> send(T value){
+        if (closed){
+            return Promise.rejected(new ClosedException());
+        }
+        //没有其它线程在drain, 且缓冲区还有位置时, 直接放入缓冲区
+        if (WIP.compareAndSet(this, 0, 1)){
+            if (count < buffer.length && senders.isEmpty()){
+                enqueue(value);
+                drainLoop();
+                return Promise.resolved(null);
+            }
+            Sender<T> sender = new Sender<>(value);
+            senders.add(sender);
+            drainLoop();
+            return sender;
+        }
+        Sender<T> sender = new Sender<>(value);
+        senders.add(sender);
+        drain();
+        return sender;
+    }
+
+    /**
+     * 接收数据
+     * @return 取到数据后结束的Promise; 通道关闭且缓冲区为空时以ClosedException结束
+     */
+    @SuppressWarnings("unchecked")
+    public Promise<T> receive(){
+        //没有其它线程在drain, 且缓冲区中有数据时, 直接取出
+        if (WIP.compareAndSet(this, 0, 1)){
+            if (count > 0 && receivers.isEmpty()){
+                T value = (T) dequeue();
+                drainLoop();
+                return Promise.resolved(value);
+            }
+            Promise<T> receiver = new Promise<>(Promise.State.Pending);
+            receivers.add(receiver);
+            drainLoop();
+            return receiver;
+        }
+        Promise<T> receiver = new Promise<>(Promise.State.Pending);
+        receivers.add(receiver);
+        drain();
+        return receiver;
+    }
+
+    /**
+     * 关闭通道
+     * 之后的send以及正在等待的send都会以ClosedException结束; 缓冲区中的数据仍然可以被接收, 取完之后receive以ClosedException结束
+     */
+    public void close(){
+        closed = true;
+        drain();
+    }
+
+    /**
+     * 是否已关闭
+     * @return 是否已关闭
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+
+    private void drain(){
+        if (WIP.getAndIncrement(this) == 0){
+            drainLoop();
+        }
+    }
+
+    /**
+     * 在缓冲区、发送者和接收者之间移动数据, 调用之前必须已经持有wip
+     */
+    @SuppressWarnings("unchecked")
+    private void drainLoop(){
+        int missed = 1;
+        for (;;){
+            boolean progress = true;
+            while (progress){
+                progress = false;
+
+                //把缓冲区中的数据交给接收者
+                while (count > 0){
+                    Promise<T> receiver = receivers.poll();
+                    if (receiver == null){
+                        break;
+                    }
+                    if (receiver.settle((T) buffer[head], null)){
+                        dequeue();
+                    }
+                }
+
+                //把发送者的数据放入缓冲区
+                while (count < buffer.length && !closed){
+                    Sender<T> sender = senders.poll();
+                    if (sender == null){
+                        break;
+                    }
+                    T value = sender.value;
+                    sender.value = null;
+                    if (sender.settle(null, null)){
+                        enqueue(value);
+                        progress = true;
+                    }
+                }
+            }
+
+            if (closed){
+                Sender<T> sender;
+                while ((sender = senders.poll()) != null){
+                    sender.value = null;
+                    sender.settle(null, new ClosedException());
+                }
+                if (count == 0){
+                    Promise<T> receiver;
+                    while ((receiver = receivers.poll()) != null){
+                        receiver.settle(null, new ClosedException());
+                    }
+                }
+            }
+
+            missed = WIP.addAndGet(this, -missed);
+            if (missed == 0){
+                return;
+            }
+        }
+    }
+
+    private void enqueue(T value){
+        buffer[(head + count) % buffer.length] = value;
+        count ++;
+    }
+
+    private Object dequeue(){
+        Object value = buffer[head];
+        buffer[head] = null;
+        head = (head + 1) % buffer.length;
+        count --;
+        return value;
+    }
+
+    /**
+     * 等待缓冲区空出位置的发送者, 它本身就是send返回的Promise
+     */
+    private static final class Sender<T> extends Promise<Void> {
+        private T value;
+
+        Sender(T value){
+            super(State.Pending);
+            this.value = value;
+        }
+    }
+
+    /**
+     * 通道已关闭
+     */
+    public static class ClosedException extends RuntimeException {
+        public ClosedException(){
+            super("channel was closed");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 已经结束的Promise的结果, 由Promise.allSettled返回
+ * @param <R> 返回值类型
+ * Created by Alan Yeh on 2017/9/27.
+ */
+
+public final class PromiseOutcome<R> {
+    private final R result;
+    private final RuntimeException error;
+
+    PromiseOutcome(R result, RuntimeException error){
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * 获取状态
+     * @return Fulfilled或Rejected
+     */
+    public Promise.State getState(){
+        return error != null ? Promise.State.Rejected : Promise.State.Fulfilled;
+    }
+
+    /**
+     * 获取结果
+     * @return 结果, 失败时为null
+     */
+    public R getResult() {
+        return result;
+    }
+
+    /**
+     * 获取错误
+     * @return 错误, 成功时为null
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    /**
+     * 是否成功
+     * @return 是否成功
+     */
+    public boolean isSuccess(){
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return error != null ? "Rejected(" + error + ")" : "Fulfilled(" + result + ")";
+    }
+}
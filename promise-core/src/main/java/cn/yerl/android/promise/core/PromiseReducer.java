@@ -0,0 +1,9 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 合并回调
+ * Created by Alan Yeh on 2017/9/28.
+ */
+public interface PromiseReducer<T, R> {
+    T call(T accumulator, R value);
+}
@@ -0,0 +1,386 @@
+package cn.yerl.android.promise.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 异步的结果流
+ * 由Promise.inCompletionOrder创建, 每一个Promise结束时就立即发出它的结果, 而不是等待最慢的一个.
+ * filter、map、take用于组装新的流, forEach、reduce、toList用于消费, 消费之后才开始发出结果.
+ * 所有的回调都按顺序在创建流时的默认调度器上执行, 不会同时执行. 每一个流只能被消费一次.
+ * 任何一个Promise失败或回调抛出异常时, 流结束, 消费时返回的Promise以该错误结束.
+ * @param <R> 结果类型
+ * Created by Alan Yeh on 2017/9/28.
+ */
+public final class PromiseStream<R> {
+    /**
+     * 接收流中的结果
+     */
+    interface Sink<R> {
+        /**
+         * 接收一个结果
+         * @return 是否还需要更多的结果
+         */
+        boolean next(R value);
+
+        /**
+         * 流结束
+         * @param error 错误, 正常结束时为null
+         */
+        void complete(RuntimeException error);
+    }
+
+    /**
+     * 流的来源
+     */
+    interface Source<R> {
+        void subscribe(Sink<R> sink);
+
+        /**
+         * 提前结束流, 不再等待剩下的结果, Sink随后以complete(null)结束
+         * 只能在subscribe之后调用
+         */
+        void stop();
+    }
+
+    private final Source<R> source;
+
+    PromiseStream(Source<R> source){
+        this.source = source;
+    }
+
+    /**
+     * 按结束的顺序发出每一个Promise的结果
+     * @param promises Promise集合
+     * @param scheduler 执行回调的调度器
+     * @param <R> 结果类型
+     * @return PromiseStream
+     */
+    static <R> PromiseStream<R> inCompletionOrder(Iterable<? extends Promise<R>> promises, Scheduler scheduler){
+        return new PromiseStream<>(new CompletionOrderSource<>(promises, scheduler));
+    }
+
+    /**
+     * 只保留满足条件的结果
+     * @param predicate 条件
+     * @return PromiseStream
+     */
+    public PromiseStream<R> filter(final PromiseCallback<R, Boolean> predicate){
+        return new PromiseStream<>(new Source<R>() {
+            @Override
+            public void subscribe(final Sink<R> sink) {
+                source.subscribe(new Sink<R>() {
+                    @Override
+                    public boolean next(R value) {
+                        if (Boolean.TRUE.equals(predicate.call(value))){
+                            return sink.next(value);
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public void complete(RuntimeException error) {
+                        sink.complete(error);
+                    }
+                });
+            }
+
+            @Override
+            public void stop() {
+                source.stop();
+            }
+        });
+    }
+
+    /**
+     * 转换每一个结果
+     * @param mapper 转换
+     * @param <N> 转换后的类型
+     * @return PromiseStream
+     */
+    public <N> PromiseStream<N> map(final PromiseCallback<R, N> mapper){
+        return new PromiseStream<>(new Source<N>() {
+            @Override
+            public void subscribe(final Sink<N> sink) {
+                source.subscribe(new Sink<R>() {
+                    @Override
+                    public boolean next(R value) {
+                        return sink.next(mapper.call(value));
+                    }
+
+                    @Override
+                    public void complete(RuntimeException error) {
+                        sink.complete(error);
+                    }
+                });
+            }
+
+            @Override
+            public void stop() {
+                source.stop();
+            }
+        });
+    }
+
+    /**
+     * 只取前count个结果, 之后流直接结束, 剩下的结果会被忽略, 还没有结束的Promise也不再被观察
+     * @param count 数量
+     * @return PromiseStream
+     */
+    public PromiseStream<R> take(final int count){
+        if (count < 0){
+            throw new IllegalArgumentException("count不能小于0");
+        }
+        return new PromiseStream<>(new Source<R>() {
+            @Override
+            public void subscribe(final Sink<R> sink) {
+                source.subscribe(new Sink<R>() {
+                    private int remaining = count;
+
+                    @Override
+                    public boolean next(R value) {
+                        if (remaining <= 0){
+                            return false;
+                        }
+                        return sink.next(value) && -- remaining > 0;
+                    }
+
+                    @Override
+                    public void complete(RuntimeException error) {
+                        sink.complete(error);
+                    }
+                });
+                if (count == 0){
+                    //一个结果都不需要, 同样经过来源结束, 释放所有的Promise
+                    source.stop();
+                }
+            }
+
+            @Override
+            public void stop() {
+                source.stop();
+            }
+        });
+    }
+
+    /**
+     * 处理每一个结果
+     * @param callback 回调
+     * @return 流结束时结束的Promise, 取消时流立即结束
+     */
+    public Promise<Void> forEach(final PromiseVoidReturnCallback<R> callback){
+        final Promise<Void> promise = new Promise<>(Promise.State.Pending);
+        consume(promise, new TerminalSink<R>(promise) {
+            @Override
+            public boolean next(R value) {
+                callback.call(value);
+                return isPending();
+            }
+
+            @Override
+            public void complete(RuntimeException error) {
+                promise.settle(null, error);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * 合并所有的结果
+     * @param initial 初始值
+     * @param reducer 合并回调
+     * @param <T> 合并后的类型
+     * @return 流结束时以合并结果结束的Promise, 取消时流立即结束
+     */
+    public <T> Promise<T> reduce(final T initial, final PromiseReducer<T, R> reducer){
+        final Promise<T> promise = new Promise<>(Promise.State.Pending);
+        consume(promise, new TerminalSink<R>(promise) {
+            private T accumulator = initial;
+
+            @Override
+            public boolean next(R value) {
+                accumulator = reducer.call(accumulator, value);
+                return isPending();
+            }
+
+            @Override
+            public void complete(RuntimeException error) {
+                T result = accumulator;
+                accumulator = null;
+                promise.settle(error == null ? result : null, error);
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * 按发出的顺序收集所有的结果
+     * @return 流结束时以所有结果结束的Promise, 取消时流立即结束
+     */
+    public Promise<List<R>> toList(){
+        return reduce((List<R>) new ArrayList<R>(), new PromiseReducer<List<R>, R>() {
+            @Override
+            public List<R> call(List<R> accumulator, R value) {
+                accumulator.add(value);
+                return accumulator;
+            }
+        });
+    }
+
+    /**
+     * 开始消费流, 返回的Promise被取消时立即结束流, 而不是等到下一个结果到达
+     */
+    private void consume(Promise<?> promise, Sink<R> sink){
+        source.subscribe(sink);
+        promise.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                source.stop();
+            }
+        });
+    }
+
+    /**
+     * 消费流的Sink, 返回的Promise被取消之后不再接收结果
+     */
+    private static abstract class TerminalSink<R> implements Sink<R> {
+        private final Promise<?> promise;
+
+        TerminalSink(Promise<?> promise){
+            this.promise = promise;
+        }
+
+        boolean isPending(){
+            return promise.getState() == Promise.State.Pending;
+        }
+    }
+
+    /**
+     * 按结束顺序发出结果
+     * Promise结束时将结果放入队列, 再由调度器上的drain按顺序交给Sink, drain通过wip计数保证同一时刻只有一个在执行
+     */
+    private static final class CompletionOrderSource<R> implements Source<R>, Runnable {
+        private static final AtomicIntegerFieldUpdater<CompletionOrderSource> WIP =
+                AtomicIntegerFieldUpdater.newUpdater(CompletionOrderSource.class, "wip");
+
+        /// 所有的Promise都已经拼接完成
+        private final PromiseOutcome<R> end = new PromiseOutcome<>(null, null);
+        /// 提前结束
+        private final PromiseOutcome<R> stopped = new PromiseOutcome<>(null, null);
+
+        private Iterable<? extends Promise<R>> promises;
+        private final Scheduler scheduler;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+        private final Queue<PromiseOutcome<R>> outcomes = new ConcurrentLinkedQueue<>();
+        private volatile int wip;
+
+        /// 以下字段只在drain中访问
+        private List<Promise<R>> inputs;
+        private Sink<R> sink;
+        private int remaining;
+        private boolean done;
+
+        CompletionOrderSource(Iterable<? extends Promise<R>> promises, Scheduler scheduler){
+            this.promises = promises;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void subscribe(Sink<R> sink) {
+            if (!subscribed.compareAndSet(false, true)){
+                throw new IllegalStateException("PromiseStream只能被消费一次");
+            }
+            //只遍历一次, 一次性的或者正在被修改的Iterable也能得到准确的数量
+            List<Promise<R>> promises = new ArrayList<>();
+            for (Promise<R> promise : this.promises){
+                promises.add(promise);
+            }
+            this.promises = null;
+            //计数多加1, 所有的Promise都拼接完成之后再减去, 避免拼接过程中就结束
+            this.inputs = promises;
+            this.sink = sink;
+            this.remaining = promises.size() + 1;
+
+            //先观察所有的Promise, 避免流提前结束时释放了还没有被观察的Promise
+            for (Promise<R> promise : promises){
+                promise.retain();
+            }
+            for (Promise<R> promise : promises){
+                promise.subscribe(new PromiseResolver<R>() {
+                    @Override
+                    public void resolve(R result, RuntimeException error) {
+                        offer(new PromiseOutcome<>(result, error));
+                    }
+                });
+            }
+            offer(end);
+        }
+
+        @Override
+        public void stop() {
+            //交给drain处理, 与结果的发出保持串行
+            offer(stopped);
+        }
+
+        private void offer(PromiseOutcome<R> outcome){
+            outcomes.add(outcome);
+            if (WIP.getAndIncrement(this) == 0){
+                scheduler.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            for (;;){
+                PromiseOutcome<R> outcome;
+                while ((outcome = outcomes.poll()) != null){
+                    if (done){
+                        continue;
+                    }
+                    if (outcome == stopped){
+                        finish(null);
+                        continue;
+                    }
+                    remaining --;
+                    try {
+                        if (outcome != end){
+                            if (!outcome.isSuccess()){
+                                finish(outcome.getError());
+                            }else if (!sink.next(outcome.getResult())){
+                                finish(null);
+                            }
+                        }
+                        if (!done && remaining == 0){
+                            finish(null);
+                        }
+                    }catch (RuntimeException ex){
+                        if (!done){
+                            finish(ex);
+                        }
+                    }
+                }
+                missed = WIP.addAndGet(this, -missed);
+                if (missed == 0){
+                    return;
+                }
+            }
+        }
+
+        private void finish(RuntimeException error){
+            done = true;
+            //不再关心还没有结束的Promise, 但它们可能还有其它下游, 因此只释放而不取消
+            for (Promise<R> promise : inputs){
+                promise.release();
+            }
+            inputs = null;
+            Sink<R> sink = this.sink;
+            this.sink = null;
+            sink.complete(error);
+        }
+    }
+}
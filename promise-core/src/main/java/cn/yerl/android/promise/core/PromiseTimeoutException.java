@@ -0,0 +1,24 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * Promise超时异常
+ * 使用timeout之后, 如果Promise在指定时间内没有结束, 则以该异常结束
+ * Created by Alan Yeh on 2017/9/25.
+ */
+
+public class PromiseTimeoutException extends RuntimeException {
+    private final long timeoutMillis;
+
+    public PromiseTimeoutException(long timeoutMillis){
+        super("promise timed out after " + timeoutMillis + "ms");
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 超时时间
+     * @return 超时时间，毫秒
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
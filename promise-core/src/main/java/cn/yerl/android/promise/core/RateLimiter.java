@@ -0,0 +1,163 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流
+ * 令牌以permitsPerSecond的速度生成, 空闲时最多积累burst个(包括马上就可以使用的下一个令牌), 因此空闲之后可以立即执行burst个任务,
+ * 之后按固定速度执行.
+ * 申请令牌时直接预约下一个令牌的时间, 需要等待的任务交给定时器, 到期之后再派发到调度器, 不会阻塞任何线程.
+ * Created by Alan Yeh on 2017/10/11.
+ */
+public final class RateLimiter {
+    private final long intervalNanos;
+
+    /// 以下字段由this保护
+    private int burst = 1;
+    /// 已积累的令牌数, 不包括nextFreeNanos时可用的那一个, 因此最多为burst - 1
+    private double storedPermits;
+    /// 下一个令牌可用的时间
+    private long nextFreeNanos = System.nanoTime();
+
+    /// 最近一次limit返回的调度器, 同一个调度器反复限流时不再重新创建
+    private volatile LimitedScheduler limited;
+
+    /**
+     * @param permitsPerSecond 每秒生成的令牌数
+     */
+    public RateLimiter(double permitsPerSecond){
+        if (!(permitsPerSecond > 0)){
+            throw new IllegalArgumentException("permitsPerSecond必须大于0");
+        }
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    /**
+     * 设置最多积累的令牌数, 即空闲之后可以立即执行的任务数
+     * @param burst 最多积累的令牌数
+     * @return RateLimiter
+     */
+    public synchronized RateLimiter setBurst(int burst){
+        if (burst <= 0){
+            throw new IllegalArgumentException("burst必须大于0");
+        }
+        this.burst = burst;
+        this.storedPermits = Math.min(storedPermits, burst - 1);
+        return this;
+    }
+
+    /**
+     * 尝试获取令牌, 不等待
+     * @return 是否获取成功
+     */
+    public synchronized boolean tryAcquire(){
+        long now = System.nanoTime();
+        refill(now);
+        if (nextFreeNanos - now > 0){
+            return false;
+        }
+        reserve(now);
+        return true;
+    }
+
+    /**
+     * 获取令牌
+     * @return 获取到令牌后结束的Promise; 被取消时放弃等待(已预约的令牌不会归还)
+     */
+    public Promise<Void> acquire(){
+        long waitMillis = reserve();
+        if (waitMillis == 0){
+            return Promise.resolved(null);
+        }
+        final Promise<Void> promise = new Promise<>(Promise.State.Pending);
+        final HashedWheelTimer.Timeout timeout = HashedWheelTimer.INSTANCE.schedule(new Runnable() {
+            @Override
+            public void run() {
+                promise.settle(null, null);
+            }
+        }, waitMillis);
+        promise.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                timeout.cancel();
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * 包装调度器, 派发到该调度器的任务都需要先获取令牌
+     * 需要等待的任务在定时器中等待, 到期之后再派发到原调度器
+     * @param scheduler 调度器
+     * @return 限流的调度器, 连续对同一个调度器限流时返回同一个对象
+     */
+    public Scheduler limit(final Scheduler scheduler){
+        if (scheduler == null){
+            throw new IllegalArgumentException("scheduler不能为空");
+        }
+        LimitedScheduler limited = this.limited;
+        if (limited == null || limited.scheduler != scheduler){
+            limited = new LimitedScheduler(scheduler);
+            this.limited = limited;
+        }
+        return limited;
+    }
+
+    /**
+     * 预约一个令牌
+     * @return 需要等待的时间，毫秒
+     */
+    private synchronized long reserve(){
+        long now = System.nanoTime();
+        refill(now);
+        long waitNanos = Math.max(0, nextFreeNanos - now);
+        reserve(now);
+        return (waitNanos + 999999) / 1000000;
+    }
+
+    /**
+     * 优先使用已积累的令牌, 不够时把下一个令牌可用的时间向后推
+     */
+    private void reserve(long now){
+        double stored = Math.min(1, storedPermits);
+        storedPermits -= stored;
+        nextFreeNanos = Math.max(nextFreeNanos, now) + (long) ((1 - stored) * intervalNanos);
+    }
+
+    /**
+     * 根据空闲的时间补充令牌
+     */
+    private void refill(long now){
+        if (now - nextFreeNanos > 0){
+            storedPermits = Math.min(burst - 1, storedPermits + (now - nextFreeNanos) / (double) intervalNanos);
+            nextFreeNanos = now;
+        }
+    }
+
+    /**
+     * 限流的调度器
+     */
+    private final class LimitedScheduler implements Scheduler {
+        private final Scheduler scheduler;
+
+        LimitedScheduler(Scheduler scheduler){
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            long waitMillis = reserve();
+            if (waitMillis == 0){
+                scheduler.execute(task);
+            }else {
+                Promise.executeDelayed(scheduler, task, waitMillis);
+            }
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            //每一个任务都必须经过限流, 不允许直接执行
+            return false;
+        }
+    }
+}
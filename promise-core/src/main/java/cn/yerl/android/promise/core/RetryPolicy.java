@@ -0,0 +1,126 @@
+package cn.yerl.android.promise.core;
+
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 重试策略
+ * 第n次失败之后等待 min(maxDelay, initialDelay * multiplier^(n-1)) 再重试;
+ * 开启jitter时(默认开启)等待时间在0到该值之间随机选取(full jitter), 避免大量客户端在故障恢复时同时重试.
+ * 被取消(CancellationException)的Promise不会重试.
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public final class RetryPolicy {
+    private static final Random random = new Random();
+
+    private int maxAttempts = 3;
+    private long initialDelayMillis = 100;
+    private long maxDelayMillis = 10000;
+    private double multiplier = 2;
+    private boolean jitter = true;
+    private PromiseCallback<RuntimeException, Boolean> retryOn;
+
+    /**
+     * 设置最多执行的次数, 包括第一次
+     * @param maxAttempts 最多执行的次数
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMaxAttempts(int maxAttempts){
+        if (maxAttempts <= 0){
+            throw new IllegalArgumentException("maxAttempts必须大于0");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * 设置第一次重试之前的等待时间
+     * @param initialDelayMillis 等待时间，毫秒
+     * @return RetryPolicy
+     */
+    public RetryPolicy setInitialDelay(long initialDelayMillis){
+        if (initialDelayMillis < 0){
+            throw new IllegalArgumentException("initialDelayMillis不能小于0");
+        }
+        this.initialDelayMillis = initialDelayMillis;
+        return this;
+    }
+
+    /**
+     * 设置最长的等待时间
+     * @param maxDelayMillis 等待时间，毫秒
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMaxDelay(long maxDelayMillis){
+        if (maxDelayMillis < 0){
+            throw new IllegalArgumentException("maxDelayMillis不能小于0");
+        }
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * 设置每次重试等待时间的倍数
+     * @param multiplier 倍数
+     * @return RetryPolicy
+     */
+    public RetryPolicy setMultiplier(double multiplier){
+        if (multiplier < 1){
+            throw new IllegalArgumentException("multiplier不能小于1");
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * 设置是否在0到等待时间之间随机选取
+     * @param jitter 是否随机
+     * @return RetryPolicy
+     */
+    public RetryPolicy setJitter(boolean jitter){
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * 设置哪些错误需要重试, 默认除了取消以外的错误都会重试
+     * @param retryOn 返回true时重试
+     * @return RetryPolicy
+     */
+    public RetryPolicy setRetryOn(PromiseCallback<RuntimeException, Boolean> retryOn){
+        this.retryOn = retryOn;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 是否需要重试
+     * @param error 错误
+     * @param attempts 已经执行的次数
+     * @return 是否需要重试
+     */
+    boolean shouldRetry(RuntimeException error, int attempts){
+        if (attempts >= maxAttempts || error instanceof CancellationException){
+            return false;
+        }
+        PromiseCallback<RuntimeException, Boolean> retryOn = this.retryOn;
+        return retryOn == null || Boolean.TRUE.equals(retryOn.call(error));
+    }
+
+    /**
+     * 计算等待时间
+     * @param attempts 已经执行的次数
+     * @return 等待时间，毫秒
+     */
+    long delayMillis(int attempts){
+        double delay = initialDelayMillis * Math.pow(multiplier, attempts - 1);
+        long capped = (long) Math.min(delay, maxDelayMillis);
+        if (!jitter || capped <= 0){
+            return capped;
+        }
+        return (long) (random.nextDouble() * (capped + 1));
+    }
+}
@@ -0,0 +1,86 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * Promise.retry
+ * 每次失败之后通过定时器等待一段时间, 再调用supplier重新创建上游. 所有的尝试都结算到同一个Promise上, 不会增加执行链的长度.
+ * @param <R> 返回值类型
+ * Created by Alan Yeh on 2017/10/9.
+ */
+final class RetryPromise<R> extends Promise<R> implements PromiseResolver<R>, Runnable {
+    private final RetryPolicy policy;
+    private final PromiseVoidArgCallback<Promise<R>> supplier;
+    private final Scheduler scheduler;
+
+    /// 已经执行的次数
+    private volatile int attempts;
+    /// 等待重试的定时器
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    RetryPromise(RetryPolicy policy, PromiseVoidArgCallback<Promise<R>> supplier, Scheduler scheduler){
+        super(State.Pending);
+        this.policy = policy;
+        this.supplier = supplier;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 执行一次
+     */
+    @Override
+    public void run() {
+        timeout = null;
+        if (getState() != State.Pending){
+            return;
+        }
+        attempts ++;
+
+        Promise<R> promise;
+        try {
+            promise = supplier.call();
+        }catch (RuntimeException ex){
+            promise = rejected(ex);
+        }
+        if (promise == null){
+            promise = rejected(new IllegalStateException("supplier不能返回null"));
+        }
+        //被取消时, 同时取消正在执行的上游
+        promise.observe(this);
+        promise.subscribe(this);
+    }
+
+    /**
+     * 上游结束
+     */
+    @Override
+    public void resolve(R result, RuntimeException error) {
+        if (error == null){
+            settle(result, null);
+            return;
+        }
+        boolean retry;
+        try {
+            retry = getState() == State.Pending && policy.shouldRetry(error, attempts);
+        }catch (RuntimeException ex){
+            settle(null, ex);
+            return;
+        }
+        if (!retry){
+            settle(null, error);
+            return;
+        }
+        long delay = policy.delayMillis(attempts);
+        if (delay > 0){
+            timeout = executeDelayed(scheduler, this, delay);
+        }else {
+            scheduler.execute(this);
+        }
+    }
+
+    @Override
+    void onCancelled() {
+        HashedWheelTimer.Timeout timeout = this.timeout;
+        if (timeout != null){
+            timeout.cancel();
+        }
+    }
+}
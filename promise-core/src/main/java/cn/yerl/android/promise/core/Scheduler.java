@@ -0,0 +1,20 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 调度器, 决定回调在哪个线程上执行
+ * Created by Alan Yeh on 2017/9/18.
+ */
+public interface Scheduler {
+    /**
+     * 执行任务
+     * @param task 任务
+     */
+    void execute(Runnable task);
+
+    /**
+     * 当前线程是否属于该调度器
+     * 如果是, 拼接在已结束的Promise之后的回调会直接执行, 不再派发
+     * @return 无法判断时返回false
+     */
+    boolean isCurrentThread();
+}
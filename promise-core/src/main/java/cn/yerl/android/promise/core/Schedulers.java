@@ -0,0 +1,112 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 内置调度器
+ * Created by Alan Yeh on 2017/9/18.
+ */
+public final class Schedulers {
+    private static final Scheduler IMMEDIATE = new Scheduler() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            return true;
+        }
+    };
+
+    /// 线程池都在第一次使用时才创建线程
+    static final PoolScheduler COMPUTE = new PoolScheduler("promise-compute", Runtime.getRuntime().availableProcessors(),
+            Runtime.getRuntime().availableProcessors(), 0L, false);
+
+    static final PoolScheduler IO = new PoolScheduler("promise-io", 0, Integer.MAX_VALUE, 60L, true);
+
+    private Schedulers(){
+    }
+
+    /**
+     * 主线程调度器
+     * @return Scheduler
+     */
+    public static Scheduler main(){
+        return MainScheduler.INSTANCE;
+    }
+
+    /**
+     * 设置主线程派发器
+     * 默认通过ServiceLoader查找, Android环境下依赖promise-android即可, 一般不需要手动设置
+     * @param dispatcher 主线程派发器
+     */
+    public static void setMainDispatcher(MainDispatcher dispatcher){
+        if (dispatcher == null){
+            throw new IllegalArgumentException("dispatcher不能为空");
+        }
+        MainScheduler.INSTANCE.setDispatcher(dispatcher);
+    }
+
+    /**
+     * 获取主线程派发器
+     * @return MainDispatcher
+     */
+    public static MainDispatcher getMainDispatcher(){
+        return MainScheduler.INSTANCE.getDispatcher();
+    }
+
+    /**
+     * 计算调度器, 线程数与CPU核心数一致, 适用于CPU密集型任务
+     * @return ThreadPoolScheduler
+     */
+    public static ThreadPoolScheduler compute(){
+        return COMPUTE;
+    }
+
+    /**
+     * IO调度器, 按需创建线程, 空闲线程会被回收, 适用于文件、数据库、网络等阻塞任务
+     * @return ThreadPoolScheduler
+     */
+    public static ThreadPoolScheduler io(){
+        return IO;
+    }
+
+    /**
+     * 内置的异步线程池, thenAsync、errorAsync、alwaysAsync默认使用该调度器, 按优先级执行
+     * @return ThreadPoolScheduler
+     */
+    public static ThreadPoolScheduler async(){
+        return Promise.threadPool;
+    }
+
+    /**
+     * 立即调度器, 在调用者的线程中直接执行
+     * @return Scheduler
+     */
+    public static Scheduler immediate(){
+        return IMMEDIATE;
+    }
+
+    /**
+     * 使用Executor创建调度器
+     * @param executor Executor
+     * @return Scheduler
+     */
+    public static Scheduler from(final Executor executor){
+        if (executor == null){
+            throw new IllegalArgumentException("executor不能为空");
+        }
+        return new Scheduler() {
+            @Override
+            public void execute(Runnable task) {
+                executor.execute(task);
+            }
+
+            @Override
+            public boolean isCurrentThread() {
+                return false;
+            }
+        };
+    }
+}
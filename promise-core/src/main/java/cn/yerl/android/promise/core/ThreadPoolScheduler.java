@@ -0,0 +1,25 @@
+package cn.yerl.android.promise.core;
+
+/**
+ * 由线程池实现的调度器, 可以获取线程池的运行状态
+ * Created by Alan Yeh on 2017/10/14.
+ */
+public interface ThreadPoolScheduler extends Scheduler {
+    /**
+     * 正在排队的任务数
+     * @return 任务数
+     */
+    int getQueueSize();
+
+    /**
+     * 正在执行任务的线程数
+     * @return 线程数
+     */
+    int getActiveCount();
+
+    /**
+     * 当前的线程数, 包括空闲的线程
+     * @return 线程数
+     */
+    int getPoolSize();
+}
@@ -0,0 +1,70 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.allSettled、Promise.any: 保存每一个结果, 第一个成功即结束, 全部失败时汇总错误
+ * Created by Alan Yeh on 2017/9/27.
+ */
+public class AllSettledAnyTest {
+
+    @Test
+    public void allSettledKeepsEveryOutcome() throws Exception {
+        Promise<String> ok = TestSupport.pending();
+        Promise<String> failed = TestSupport.pending();
+        Promise<List<PromiseOutcome<String>>> settled = Promise.allSettled(ok, failed);
+        failed.settle(null, new IllegalStateException("boom"));
+        assertEquals(Promise.State.Pending, settled.getState());
+        ok.settle("x", null);
+
+        List<PromiseOutcome<String>> outcomes = TestSupport.await(settled);
+        assertEquals(2, outcomes.size());
+        assertTrue(outcomes.get(0).isSuccess());
+        assertEquals("x", outcomes.get(0).getResult());
+        assertEquals(Promise.State.Rejected, outcomes.get(1).getState());
+        assertEquals("boom", outcomes.get(1).getError().getMessage());
+    }
+
+    @Test
+    public void anyTakesFirstSuccess() throws Exception {
+        Promise<String> failed = TestSupport.pending();
+        Promise<String> slow = TestSupport.pending();
+        Promise<String> fast = TestSupport.pending();
+        Promise<String> any = Promise.any(failed, slow, fast);
+        failed.settle(null, new IllegalStateException("boom"));
+        assertEquals(Promise.State.Pending, any.getState());
+        fast.settle("fast", null);
+        slow.settle("slow", null);
+        assertEquals("fast", TestSupport.await(any));
+    }
+
+    @Test
+    public void anyAggregatesErrorsInPositionOrder() throws Exception {
+        Promise<String> first = TestSupport.pending();
+        Promise<String> second = TestSupport.pending();
+        Promise<String> any = Promise.any(first, second);
+        second.settle(null, new IllegalStateException("second"));
+        first.settle(null, new IllegalArgumentException("first"));
+
+        RuntimeException error = TestSupport.awaitError(any);
+        assertTrue(error instanceof PromiseAggregateException);
+        List<RuntimeException> errors = ((PromiseAggregateException) error).getErrors();
+        assertEquals("first", errors.get(0).getMessage());
+        assertEquals("second", errors.get(1).getMessage());
+    }
+
+    @Test
+    public void cancelOnSuccessCancelsLosers() throws Exception {
+        Promise<String> winner = TestSupport.pending();
+        Promise<String> loser = TestSupport.pending();
+        Promise<String> any = Promise.any(Arrays.asList(winner, loser), true);
+        winner.settle("won", null);
+        assertEquals("won", TestSupport.await(any));
+        assertTrue(loser.isCancelled());
+    }
+}
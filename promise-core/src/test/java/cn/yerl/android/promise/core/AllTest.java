@@ -0,0 +1,82 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.all: 按位置保存结果, 第一个失败即结束, 失败或取消时放弃其它Promise
+ * Created by Alan Yeh on 2017/9/27.
+ */
+public class AllTest {
+
+    @Test
+    public void resultsKeepInputPositions() throws Exception {
+        Promise<String> first = TestSupport.pending();
+        Promise<String> second = TestSupport.pending();
+        Promise<List<String>> all = Promise.all(Arrays.asList(first, second));
+        second.settle("b", null);
+        assertEquals(Promise.State.Pending, all.getState());
+        first.settle("a", null);
+        assertEquals(Arrays.asList("a", "b"), TestSupport.await(all));
+    }
+
+    @Test
+    public void emptyInputResolvesEmptyList() throws Exception {
+        assertEquals(Collections.<String>emptyList(), TestSupport.await(Promise.all(Collections.<Promise<String>>emptyList())));
+    }
+
+    @Test
+    public void firstFailureWins() throws Exception {
+        Promise<String> first = TestSupport.pending();
+        Promise<String> second = TestSupport.pending();
+        Promise<List<String>> all = Promise.all(first, second);
+        second.settle(null, new IllegalStateException("second"));
+        first.settle(null, new IllegalArgumentException("first"));
+        //第一个错误作为cause传递
+        RuntimeException error = TestSupport.awaitError(all);
+        assertEquals("second", error.getCause().getMessage());
+    }
+
+    @Test
+    public void failureLeavesSiblingsRunningByDefault() throws Exception {
+        Promise<String> failing = TestSupport.pending();
+        Promise<String> sibling = TestSupport.pending();
+        Promise<List<String>> all = Promise.all(failing, sibling);
+        failing.settle(null, new IllegalStateException("boom"));
+        TestSupport.awaitError(all);
+        assertEquals(Promise.State.Pending, sibling.getState());
+    }
+
+    @Test
+    public void cancelOnFailureCancelsUnobservedSiblings() throws Exception {
+        Promise<String> failing = TestSupport.pending();
+        Promise<String> sibling = TestSupport.pending();
+        Promise<String> shared = TestSupport.pending();
+        shared.pipe(new PromiseResolver<String>() {
+            @Override
+            public void resolve(String result, RuntimeException error) {
+            }
+        });
+        Promise<List<String>> all = Promise.all(Arrays.asList(failing, sibling, shared), true);
+        failing.settle(null, new IllegalStateException("boom"));
+        TestSupport.awaitError(all);
+        assertTrue(sibling.isCancelled());
+        //还有其它下游在等待, 不会被取消
+        assertEquals(Promise.State.Pending, shared.getState());
+    }
+
+    @Test
+    public void cancellingAllCancelsInputs() throws Exception {
+        Promise<String> first = TestSupport.pending();
+        Promise<String> second = TestSupport.pending();
+        Promise<List<String>> all = Promise.all(Arrays.asList(first, second), true);
+        assertTrue(all.cancel());
+        assertTrue(first.isCancelled());
+        assertTrue(second.isCancelled());
+    }
+}
@@ -0,0 +1,79 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * BatchLoader: 合并、去重、逐项失败、跳过已取消的key以及缓存
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public class BatchLoaderTest {
+    /// 每一次批量加载收到的key
+    private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+
+    private BatchLoader<String, String> newLoader(){
+        return new BatchLoader<>(new PromiseCallback<List<String>, Promise<List<String>>>() {
+            @Override
+            public Promise<List<String>> call(List<String> keys) {
+                batches.add(new ArrayList<>(keys));
+                List<Object> values = new ArrayList<>();
+                for (String key : keys){
+                    values.add(key.startsWith("bad") ? new IllegalStateException(key) : key.toUpperCase());
+                }
+                @SuppressWarnings("unchecked")
+                List<String> result = (List<String>) (List<?>) values;
+                return Promise.resolved(result);
+            }
+        }).setBatchWindow(30);
+    }
+
+    @Test
+    public void loadsWithinWindowAreCoalescedAndDeduplicated() throws Exception {
+        BatchLoader<String, String> loader = newLoader();
+        Promise<List<String>> all = loader.loadMany(Arrays.asList("a", "b", "a"));
+        assertEquals(Arrays.asList("A", "B", "A"), TestSupport.await(all));
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b")), batches);
+    }
+
+    @Test
+    public void failedItemOnlyRejectsItsKey() throws Exception {
+        BatchLoader<String, String> loader = newLoader();
+        Promise<String> good = loader.load("a");
+        Promise<String> bad = loader.load("bad");
+        assertEquals("A", TestSupport.await(good));
+        assertTrue(TestSupport.awaitError(bad) instanceof IllegalStateException);
+        //失败的结果不缓存
+        Promise<String> retry = loader.load("bad");
+        TestSupport.awaitError(retry);
+        assertEquals(2, batches.size());
+    }
+
+    @Test
+    public void cancelledKeysAreNotLoaded() throws Exception {
+        BatchLoader<String, String> loader = newLoader();
+        Promise<String> cancelled = loader.load("a");
+        Promise<String> kept = loader.load("b");
+        assertTrue(cancelled.cancel());
+        assertEquals("B", TestSupport.await(kept));
+        assertEquals(Collections.singletonList(Collections.singletonList("b")), batches);
+    }
+
+    @Test
+    public void cachedKeysAreNotReloadedUntilCleared() throws Exception {
+        BatchLoader<String, String> loader = newLoader().prime("p", "primed");
+        assertEquals("A", TestSupport.await(loader.load("a")));
+        assertEquals("A", TestSupport.await(loader.load("a")));
+        assertEquals("primed", TestSupport.await(loader.load("p")));
+        assertEquals(1, batches.size());
+
+        loader.clear("a");
+        assertEquals("A", TestSupport.await(loader.load("a")));
+        assertEquals(2, batches.size());
+    }
+}
@@ -0,0 +1,113 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 取消: 只有所有下游都放弃时才取消上游, pipe计为观察者, onCancel与CancellationToken
+ * Created by Alan Yeh on 2017/9/26.
+ */
+public class CancellationTest {
+    private static final PromiseCallback<String, String> IDENTITY = new PromiseCallback<String, String>() {
+        @Override
+        public String call(String arg) {
+            return arg;
+        }
+    };
+
+    @Test
+    public void cancelPropagatesToSoleUpstream() throws Exception {
+        Promise<String> upstream = TestSupport.pending();
+        Promise<String> downstream = upstream.then(IDENTITY);
+        assertTrue(downstream.cancel());
+        assertTrue(downstream.isCancelled());
+        assertTrue(upstream.isCancelled());
+    }
+
+    @Test
+    public void upstreamIsCancelledOnlyAfterEveryDownstreamGivesUp() throws Exception {
+        Promise<String> upstream = TestSupport.pending();
+        Promise<String> first = upstream.then(IDENTITY);
+        Promise<String> second = upstream.then(IDENTITY);
+        first.cancel();
+        assertEquals(Promise.State.Pending, upstream.getState());
+        second.cancel();
+        assertTrue(upstream.isCancelled());
+    }
+
+    @Test
+    public void pipeCountsAsObserver() throws Exception {
+        Promise<String> upstream = TestSupport.pending();
+        upstream.pipe(new PromiseResolver<String>() {
+            @Override
+            public void resolve(String result, RuntimeException error) {
+            }
+        });
+        upstream.then(IDENTITY).cancel();
+        assertEquals(Promise.State.Pending, upstream.getState());
+    }
+
+    @Test
+    public void cancelAfterSettleDoesNothing() throws Exception {
+        Promise<String> promise = Promise.resolved("x");
+        assertFalse(promise.cancel());
+        assertEquals("x", promise.getResult());
+    }
+
+    @Test
+    public void cancellationReachesErrorHandlersAndOnCancel() throws Exception {
+        final AtomicInteger cancelled = new AtomicInteger();
+        Promise<String> upstream = TestSupport.pending();
+        upstream.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                cancelled.incrementAndGet();
+            }
+        });
+        Promise<String> handled = upstream.error(new PromiseCallback<RuntimeException, String>() {
+            @Override
+            public String call(RuntimeException arg) {
+                return arg instanceof CancellationException ? "cancelled" : "other";
+            }
+        });
+        upstream.cancel();
+        assertEquals("cancelled", TestSupport.await(handled));
+        assertEquals(1, cancelled.get());
+    }
+
+    @Test
+    public void tokenAndPromiseCancelEachOther() throws Exception {
+        CancellationToken token = new CancellationToken();
+        Promise<String> promise = TestSupport.<String>pending().withToken(token);
+        token.cancel();
+        assertTrue(promise.isCancelled());
+
+        CancellationToken other = new CancellationToken();
+        Promise<String> second = TestSupport.<String>pending().withToken(other);
+        second.cancel();
+        assertTrue(other.isCancelled());
+    }
+
+    @Test
+    public void derivedChildrenCancelIndependently() throws Exception {
+        Promise<String> shared = TestSupport.pending();
+        Promise<String> first = shared.derive();
+        Promise<String> second = shared.derive();
+        first.cancel();
+        assertEquals(Promise.State.Pending, shared.getState());
+        shared.settle("done", null);
+        assertEquals("done", TestSupport.await(second));
+        assertTrue(first.isCancelled());
+    }
+
+    @Test
+    public void lastDerivedChildCancelsShared() throws Exception {
+        Promise<String> shared = TestSupport.pending();
+        shared.derive().cancel();
+        assertTrue(shared.isCancelled());
+    }
+}
@@ -0,0 +1,115 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * PromiseChannel: 背压、先进先出、关闭以及取消的send/receive
+ * Created by Alan Yeh on 2017/9/29.
+ */
+public class ChannelTest {
+
+    @Test
+    public void fullChannelHoldsSenderUntilReceive() throws Exception {
+        PromiseChannel<Integer> channel = new PromiseChannel<>(1);
+        assertEquals(Promise.State.Fulfilled, channel.send(1).getState());
+        Promise<Void> blocked = channel.send(2);
+        assertEquals(Promise.State.Pending, blocked.getState());
+
+        assertEquals(Integer.valueOf(1), TestSupport.await(channel.receive()));
+        TestSupport.await(blocked);
+        assertEquals(Integer.valueOf(2), TestSupport.await(channel.receive()));
+    }
+
+    @Test
+    public void emptyChannelHoldsReceiverUntilSend() throws Exception {
+        PromiseChannel<String> channel = new PromiseChannel<>(2);
+        Promise<String> waiting = channel.receive();
+        assertEquals(Promise.State.Pending, waiting.getState());
+        channel.send("x");
+        assertEquals("x", TestSupport.await(waiting));
+    }
+
+    @Test
+    public void closeDrainsBufferThenRejects() throws Exception {
+        PromiseChannel<Integer> channel = new PromiseChannel<>(2);
+        channel.send(1);
+        channel.close();
+        assertTrue(TestSupport.awaitError(channel.send(2)) instanceof PromiseChannel.ClosedException);
+        assertEquals(Integer.valueOf(1), TestSupport.await(channel.receive()));
+        assertTrue(TestSupport.awaitError(channel.receive()) instanceof PromiseChannel.ClosedException);
+    }
+
+    @Test
+    public void cancelledSendAndReceiveAreSkipped() throws Exception {
+        PromiseChannel<Integer> channel = new PromiseChannel<>(1);
+        channel.send(1);
+        Promise<Void> dropped = channel.send(2);
+        channel.send(3);
+        assertTrue(dropped.cancel());
+
+        Promise<Integer> first = channel.receive();
+        assertEquals(Integer.valueOf(1), TestSupport.await(first));
+        assertEquals(Integer.valueOf(3), TestSupport.await(channel.receive()));
+
+        Promise<Integer> abandoned = channel.receive();
+        Promise<Integer> kept = channel.receive();
+        assertTrue(abandoned.cancel());
+        channel.send(4);
+        assertEquals(Integer.valueOf(4), TestSupport.await(kept));
+    }
+
+    @Test
+    public void producerAndConsumerThreadsExchangeEveryValueInOrder() throws Exception {
+        final int count = 10000;
+        final PromiseChannel<Integer> channel = new PromiseChannel<>(8);
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i ++){
+                    awaitQuietly(channel.send(i));
+                }
+                channel.close();
+            }
+        });
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (;;){
+                    Promise<Integer> value = channel.receive();
+                    awaitQuietly(value);
+                    if (value.getError() != null){
+                        break;
+                    }
+                    received.add(value.getResult());
+                }
+                done.countDown();
+            }
+        });
+        producer.start();
+        consumer.start();
+        TestSupport.await(done);
+
+        assertEquals(count, received.size());
+        for (int i = 0; i < count; i ++){
+            assertEquals(Integer.valueOf(i), received.get(i));
+        }
+    }
+
+    private static void awaitQuietly(Promise<?> promise){
+        try {
+            TestSupport.awaitSettled(promise, TestSupport.TIMEOUT_MILLIS);
+        }catch (InterruptedException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+}
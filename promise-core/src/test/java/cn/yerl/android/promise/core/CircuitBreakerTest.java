@@ -0,0 +1,104 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * CircuitBreaker: 打开、半开探测、探测超时以及阈值的检查
+ * Created by Alan Yeh on 2017/10/10.
+ */
+public class CircuitBreakerTest {
+
+    private static PromiseVoidArgCallback<Promise<String>> returning(final Promise<String> promise){
+        return new PromiseVoidArgCallback<Promise<String>>() {
+            @Override
+            public Promise<String> call() {
+                return promise;
+            }
+        };
+    }
+
+    private static CircuitBreaker newBreaker(){
+        return new CircuitBreaker("test")
+                .setWindowSize(4)
+                .setMinimumCalls(4)
+                .setFailureRateThreshold(0.5f)
+                .setOpenDuration(50)
+                .setHalfOpenCalls(1);
+    }
+
+    private static void fail(CircuitBreaker breaker, int times) throws InterruptedException {
+        for (int i = 0; i < times; i ++){
+            TestSupport.awaitError(breaker.execute(returning(Promise.<String>rejected(new IllegalStateException("down")))));
+        }
+    }
+
+    @Test
+    public void opensWhenFailureRateReachesThreshold() throws Exception {
+        CircuitBreaker breaker = newBreaker();
+        TestSupport.await(breaker.execute(returning(Promise.resolved("ok"))));
+        TestSupport.await(breaker.execute(returning(Promise.resolved("ok"))));
+        fail(breaker, 1);
+        assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+        fail(breaker, 1);
+        assertEquals(CircuitBreaker.State.Open, breaker.getState());
+
+        RuntimeException error = TestSupport.awaitError(breaker.execute(returning(Promise.resolved("ok"))));
+        assertTrue(error instanceof CircuitBreakerOpenException);
+    }
+
+    @Test
+    public void successfulProbeClosesBreaker() throws Exception {
+        CircuitBreaker breaker = newBreaker();
+        fail(breaker, 4);
+        Thread.sleep(80);
+        assertEquals(CircuitBreaker.State.HalfOpen, breaker.getState());
+        assertEquals("ok", TestSupport.await(breaker.execute(returning(Promise.resolved("ok")))));
+        assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+    }
+
+    @Test
+    public void stuckProbeReopensAfterMaxHalfOpenDuration() throws Exception {
+        CircuitBreaker breaker = newBreaker().setMaxHalfOpenDuration(50);
+        fail(breaker, 4);
+        Thread.sleep(80);
+
+        Promise<String> probe = TestSupport.pending();
+        breaker.execute(returning(probe));
+        //探测还没有结束, 其它调用被拒绝
+        assertTrue(TestSupport.awaitError(breaker.execute(returning(Promise.resolved("ok")))) instanceof CircuitBreakerOpenException);
+        assertEquals(CircuitBreaker.State.HalfOpen, breaker.getState());
+
+        Thread.sleep(80);
+        assertTrue(TestSupport.awaitError(breaker.execute(returning(Promise.resolved("ok")))) instanceof CircuitBreakerOpenException);
+        assertEquals(CircuitBreaker.State.Open, breaker.getState());
+
+        //打开时间到了之后可以重新探测, 旧的探测结束时不再影响状态
+        Thread.sleep(80);
+        assertEquals("ok", TestSupport.await(breaker.execute(returning(Promise.resolved("ok")))));
+        probe.settle(null, new IllegalStateException("late"));
+        assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+    }
+
+    @Test
+    public void cancelledCallsAreNotRecorded() throws Exception {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 4; i ++){
+            Promise<String> call = breaker.execute(returning(TestSupport.<String>pending()));
+            assertTrue(call.cancel());
+        }
+        assertEquals(CircuitBreaker.State.Closed, breaker.getState());
+        assertEquals(0f, breaker.getFailureRate(), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroFailureThresholdIsRejected(){
+        new CircuitBreaker("test").setFailureRateThreshold(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroSlowCallThresholdIsRejected(){
+        new CircuitBreaker("test").setSlowCallRateThreshold(0);
+    }
+}
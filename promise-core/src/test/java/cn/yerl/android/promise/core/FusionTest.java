@@ -0,0 +1,132 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 直接执行(不派发)的步骤: 递归拼接不会栈溢出, 多个下游并行执行, 深度为0时每一步都派发
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public class FusionTest {
+    private static final int LEVELS = 20000;
+
+    /// 正在拼接步骤的线程, 用来判断回调是否在拼接时直接执行
+    private static volatile Thread attaching;
+
+    private int maxFusionDepth;
+
+    @Before
+    public void setUp(){
+        maxFusionDepth = Promise.getMaxFusionDepth();
+    }
+
+    @After
+    public void tearDown(){
+        Promise.setMaxFusionDepth(maxFusionDepth);
+        attaching = null;
+    }
+
+    @Test
+    public void deepRecursiveChainOnPoolThreadSettles() throws Exception {
+        Promise<Object> chain = Promise.resolved(0).thenAsync(new PromiseCallback<Integer, Object>() {
+            @Override
+            public Object call(Integer arg) {
+                return loop(arg);
+            }
+        });
+        assertEquals(LEVELS, TestSupport.await(chain));
+    }
+
+    @Test
+    public void attachToSettledPromiseRunsInlineOnSameScheduler() throws Exception {
+        assertTrue(attachAndCheckInline());
+    }
+
+    @Test
+    public void zeroDepthAlwaysDispatches() throws Exception {
+        Promise.setMaxFusionDepth(0);
+        assertFalse(attachAndCheckInline());
+    }
+
+    @Test
+    public void siblingsAreNotRunInlineOneAfterAnother() throws Exception {
+        final Promise<Integer> upstream = TestSupport.pending();
+        final CountDownLatch lastDone = new CountDownLatch(1);
+        final boolean[] firstSawLast = new boolean[1];
+
+        Promise<Object> first = upstream.thenAsync(new PromiseCallback<Integer, Object>() {
+            @Override
+            public Object call(Integer arg) {
+                //如果和最后一个下游在同一个调用栈里依次执行, 这里会一直等到超时
+                try {
+                    firstSawLast[0] = lastDone.await(TestSupport.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }catch (InterruptedException ex){
+                    throw new IllegalStateException(ex);
+                }
+                return arg;
+            }
+        });
+        Promise<Object> last = upstream.thenAsync(new PromiseCallback<Integer, Object>() {
+            @Override
+            public Object call(Integer arg) {
+                lastDone.countDown();
+                return arg;
+            }
+        });
+        Promise.resolved(1).thenAsync(new PromiseVoidReturnCallback<Integer>() {
+            @Override
+            public void call(Integer arg) {
+                upstream.settle(arg, null);
+            }
+        });
+
+        TestSupport.await(first);
+        TestSupport.await(last);
+        assertTrue(firstSawLast[0]);
+    }
+
+    private static Promise<Object> loop(int level){
+        if (level >= LEVELS){
+            return Promise.<Object>resolved(level);
+        }
+        return Promise.resolved(level).thenAsync(new PromiseCallback<Integer, Object>() {
+            @Override
+            public Object call(Integer arg) {
+                return loop(arg + 1);
+            }
+        });
+    }
+
+    /**
+     * 在线程池中拼接到已经结束的Promise上
+     * @return 回调是否在拼接时直接执行
+     */
+    private static boolean attachAndCheckInline() throws InterruptedException {
+        final boolean[] inline = new boolean[1];
+        Promise<Object> chain = Promise.resolved(0).thenAsync(new PromiseCallback<Integer, Object>() {
+            @Override
+            public Object call(Integer arg) {
+                attaching = Thread.currentThread();
+                try {
+                    return Promise.resolved(arg).thenAsync(new PromiseCallback<Integer, Object>() {
+                        @Override
+                        public Object call(Integer arg) {
+                            inline[0] = attaching == Thread.currentThread();
+                            return arg;
+                        }
+                    });
+                }finally {
+                    attaching = null;
+                }
+            }
+        });
+        TestSupport.await(chain);
+        return inline[0];
+    }
+}
@@ -0,0 +1,70 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.defer: 拼接下游之后才执行, 只执行一次, 开始之前被取消时不再执行
+ * Created by Alan Yeh on 2017/9/26.
+ */
+public class LazyPromiseTest {
+
+    private static Promise<Integer> counting(final AtomicInteger calls){
+        return Promise.defer(new PromiseVoidArgCallback<Integer>() {
+            @Override
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        });
+    }
+
+    @Test
+    public void doesNotRunUntilSubscribed() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Promise<Integer> lazy = counting(calls);
+        Thread.sleep(50);
+        assertEquals(0, calls.get());
+        assertEquals(Promise.State.Pending, lazy.getState());
+
+        assertEquals(Integer.valueOf(1), TestSupport.await(lazy.then(new PromiseCallback<Integer, Integer>() {
+            @Override
+            public Integer call(Integer arg) {
+                return arg;
+            }
+        })));
+    }
+
+    @Test
+    public void runsOnceForManySubscribers() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Promise<Integer> lazy = counting(calls);
+        PromiseCallback<Integer, Integer> identity = new PromiseCallback<Integer, Integer>() {
+            @Override
+            public Integer call(Integer arg) {
+                return arg;
+            }
+        };
+        Promise<Integer> first = lazy.then(identity);
+        Promise<Integer> second = lazy.then(identity);
+        assertEquals(Integer.valueOf(1), TestSupport.await(first));
+        assertEquals(Integer.valueOf(1), TestSupport.await(second));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void cancelledBeforeSubscribeNeverRuns() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Promise<Integer> lazy = counting(calls);
+        assertTrue(lazy.cancel());
+        lazy.pipe(new PromiseResolver<Integer>() {
+            @Override
+            public void resolve(Integer result, RuntimeException error) {
+            }
+        });
+        Thread.sleep(50);
+        assertEquals(0, calls.get());
+    }
+}
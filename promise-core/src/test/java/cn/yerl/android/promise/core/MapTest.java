@@ -0,0 +1,132 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.map、Promise.mapUnordered: 并发数、结果顺序、失败与取消时放弃正在执行的Promise
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public class MapTest {
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void mapKeepsInputOrderAndConcurrencyLimit() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        Promise<List<Integer>> promise = Promise.map(range(20), 3, new PromiseCallback<Integer, Promise<Integer>>() {
+            @Override
+            public Promise<Integer> call(final Integer arg) {
+                int now = running.incrementAndGet();
+                if (now > peak.get()){
+                    peak.set(now);
+                }
+                return Promise.resolved(arg).thenDelay(20 - arg, new PromiseCallback<Integer, Integer>() {
+                    @Override
+                    public Integer call(Integer arg) {
+                        running.decrementAndGet();
+                        return arg * 2;
+                    }
+                });
+            }
+        });
+        List<Integer> result = TestSupport.await(promise);
+        assertEquals(20, result.size());
+        for (int i = 0; i < 20; i ++){
+            assertEquals(Integer.valueOf(i * 2), result.get(i));
+        }
+        assertTrue("peak was " + peak.get(), peak.get() <= 3);
+    }
+
+    @Test
+    public void mapUnorderedKeepsCompletionOrder() throws Exception {
+        final List<Promise<String>> inputs = Arrays.asList(TestSupport.<String>pending(), TestSupport.<String>pending());
+        Promise<List<String>> promise = Promise.mapUnordered(Arrays.asList(0, 1), 2, new PromiseCallback<Integer, Promise<String>>() {
+            @Override
+            public Promise<String> call(Integer arg) {
+                return inputs.get(arg);
+            }
+        });
+        inputs.get(1).settle("second", null);
+        inputs.get(0).settle("first", null);
+        assertEquals(Arrays.asList("second", "first"), TestSupport.await(promise));
+    }
+
+    @Test
+    public void failureStopsPullingAndCancelsInflight() throws Exception {
+        final List<Promise<Integer>> created = new ArrayList<>();
+        Promise<List<Integer>> promise = Promise.map(range(10), 2, new PromiseCallback<Integer, Promise<Integer>>() {
+            @Override
+            public Promise<Integer> call(Integer arg) {
+                Promise<Integer> promise = TestSupport.pending();
+                created.add(promise);
+                return promise;
+            }
+        });
+        assertEquals(2, created.size());
+        created.get(0).settle(null, new IllegalStateException("boom"));
+        assertTrue(TestSupport.awaitError(promise) instanceof IllegalStateException);
+        assertTrue(created.get(1).isCancelled());
+        assertEquals(2, created.size());
+    }
+
+    @Test
+    public void failureRacingDrainReleasesEveryCreatedPromise() throws Exception {
+        for (int round = 0; round < ROUNDS; round ++){
+            final Queue<Promise<Integer>> created = new ConcurrentLinkedQueue<>();
+            final Promise<Integer> first = TestSupport.pending();
+            final CountDownLatch started = new CountDownLatch(1);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(started);
+                    first.settle(null, new IllegalStateException("boom"));
+                }
+            });
+            thread.start();
+            //第一个输入在另一个线程中失败, 与drain继续创建Promise同时进行
+            Promise<List<Integer>> promise = Promise.map(range(200), 200, new PromiseCallback<Integer, Promise<Integer>>() {
+                @Override
+                public Promise<Integer> call(Integer arg) {
+                    if (arg == 0){
+                        started.countDown();
+                        return first;
+                    }
+                    Promise<Integer> promise = TestSupport.pending();
+                    created.add(promise);
+                    return promise;
+                }
+            });
+            thread.join(TestSupport.TIMEOUT_MILLIS);
+            assertTrue(TestSupport.awaitError(promise) instanceof IllegalStateException);
+            for (Promise<Integer> item : created){
+                assertTrue(item.isCancelled());
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch){
+        try {
+            TestSupport.await(latch);
+        }catch (InterruptedException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static List<Integer> range(int count){
+        List<Integer> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i ++){
+            items.add(i);
+        }
+        return items;
+    }
+}
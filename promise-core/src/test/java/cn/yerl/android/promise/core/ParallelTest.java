@@ -0,0 +1,124 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.parallel: 按顺序合并、失败以及取消之后不再合并
+ * Created by Alan Yeh on 2017/10/13.
+ */
+public class ParallelTest {
+    private static final PromiseReducer<Long, Long> SUM = new PromiseReducer<Long, Long>() {
+        @Override
+        public Long call(Long accumulator, Long value) {
+            return accumulator + value;
+        }
+    };
+
+    @Test
+    public void reducesAllItems() throws Exception {
+        Promise<Long> sum = Promise.parallel(range(10000), new PromiseCallback<Integer, Long>() {
+            @Override
+            public Long call(Integer arg) {
+                return (long) arg * arg;
+            }
+        }, SUM);
+        long expected = 0;
+        for (int i = 0; i < 10000; i ++){
+            expected += (long) i * i;
+        }
+        assertEquals(Long.valueOf(expected), TestSupport.await(sum));
+    }
+
+    @Test
+    public void keepsInputOrder() throws Exception {
+        Promise<String> joined = Promise.parallel(range(500), new PromiseCallback<Integer, String>() {
+            @Override
+            public String call(Integer arg) {
+                return arg + ",";
+            }
+        }, new PromiseReducer<String, String>() {
+            @Override
+            public String call(String accumulator, String value) {
+                return accumulator + value;
+            }
+        });
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 500; i ++){
+            expected.append(i).append(',');
+        }
+        assertEquals(expected.toString(), TestSupport.await(joined));
+    }
+
+    @Test
+    public void emptyInputResolvesNull() throws Exception {
+        assertNull(TestSupport.await(Promise.parallel(Collections.<Integer>emptyList(), new PromiseCallback<Integer, Long>() {
+            @Override
+            public Long call(Integer arg) {
+                return 1L;
+            }
+        }, SUM)));
+    }
+
+    @Test
+    public void mapperErrorRejects() throws Exception {
+        Promise<Long> sum = Promise.parallel(range(100), new PromiseCallback<Integer, Long>() {
+            @Override
+            public Long call(Integer arg) {
+                if (arg == 42){
+                    throw new IllegalStateException("42");
+                }
+                return 1L;
+            }
+        }, SUM);
+        assertTrue(TestSupport.awaitError(sum) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void cancelledComputationNeverReducesNulls() throws Exception {
+        final AtomicInteger nulls = new AtomicInteger();
+        Promise<Long> sum = Promise.parallel(range(2000), new PromiseCallback<Integer, Long>() {
+            @Override
+            public Long call(Integer arg) {
+                try {
+                    Thread.sleep(1);
+                }catch (InterruptedException ex){
+                    throw new IllegalStateException(ex);
+                }
+                return 1L;
+            }
+        }, new PromiseReducer<Long, Long>() {
+            @Override
+            public Long call(Long accumulator, Long value) {
+                if (accumulator == null || value == null){
+                    nulls.incrementAndGet();
+                    return 0L;
+                }
+                return accumulator + value;
+            }
+        });
+        Thread.sleep(30);
+        assertTrue(sum.cancel());
+
+        long deadline = System.currentTimeMillis() + TestSupport.TIMEOUT_MILLIS;
+        while (!ParallelPromise.isPoolQuiescent() && System.currentTimeMillis() < deadline){
+            Thread.sleep(5);
+        }
+        assertTrue(ParallelPromise.isPoolQuiescent());
+        assertEquals(0, nulls.get());
+    }
+
+    private static List<Integer> range(int count){
+        List<Integer> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i ++){
+            items.add(i);
+        }
+        return items;
+    }
+}
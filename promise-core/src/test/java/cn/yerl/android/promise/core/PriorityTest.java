@@ -0,0 +1,135 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * 按优先级执行的线程池: 高优先级先执行, 等待较久的低优先级不会一直等待, 未指定优先级的步骤继承上一步
+ * Created by Alan Yeh on 2017/10/12.
+ */
+public class PriorityTest {
+    private PoolScheduler scheduler;
+
+    @After
+    public void tearDown(){
+        if (scheduler != null){
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * 执行链中的步骤, 带有优先级
+     */
+    private static final class Step extends Promise<Void> implements Runnable {
+        private final String name;
+        private final List<String> order;
+        private final CountDownLatch done;
+
+        Step(Priority priority, String name, List<String> order, CountDownLatch done){
+            super(State.Pending);
+            this.priority = priority;
+            this.name = name;
+            this.order = order;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            order.add(name);
+            done.countDown();
+        }
+    }
+
+    /**
+     * 占住唯一的线程, 让之后的任务排队
+     */
+    private CountDownLatch block() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                }catch (InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        TestSupport.await(started);
+        return release;
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() throws Exception {
+        scheduler = new PoolScheduler("test-priority", 1, 10000);
+        CountDownLatch release = block();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(4);
+        scheduler.execute(new Step(Priority.LOW, "low", order, done));
+        scheduler.execute(new Step(Priority.NORMAL, "normal", order, done));
+        scheduler.execute(new Step(Priority.HIGH, "high", order, done));
+        scheduler.execute(new Step(Priority.NORMAL, "normal2", order, done));
+        release.countDown();
+        TestSupport.await(done);
+        assertEquals(Arrays.asList("high", "normal", "normal2", "low"), order);
+    }
+
+    @Test
+    public void agedLowPriorityIsNotStarved() throws Exception {
+        scheduler = new PoolScheduler("test-priority", 1, 20);
+        CountDownLatch release = block();
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.execute(new Step(Priority.LOW, "low", order, done));
+        //等待超过两级的时间之后, 新入队的高优先级任务排在后面
+        Thread.sleep(80);
+        scheduler.execute(new Step(Priority.HIGH, "high", order, done));
+        release.countDown();
+        TestSupport.await(done);
+        assertEquals(Arrays.asList("low", "high"), order);
+    }
+
+    @Test
+    public void fusionYieldsToQueuedHigherPriority() throws Exception {
+        scheduler = new PoolScheduler("test-priority", 1, 10000);
+        assertTrue(scheduler.canFuse(Priority.LOW));
+        CountDownLatch release = block();
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.execute(new Step(Priority.NORMAL, "normal", Collections.synchronizedList(new ArrayList<String>()), done));
+        assertFalse(scheduler.canFuse(Priority.LOW));
+        assertFalse(scheduler.canFuse(Priority.NORMAL));
+        assertTrue(scheduler.canFuse(Priority.HIGH));
+        release.countDown();
+        TestSupport.await(done);
+    }
+
+    @Test
+    public void stepsInheritPriority() throws Exception {
+        Promise<Integer> high = Promise.resolved(1).thenAsync(Priority.HIGH, new PromiseCallback<Integer, Integer>() {
+            @Override
+            public Integer call(Integer arg) {
+                return arg + 1;
+            }
+        });
+        Promise<Integer> next = high.thenAsync(new PromiseCallback<Integer, Integer>() {
+            @Override
+            public Integer call(Integer arg) {
+                return arg + 1;
+            }
+        });
+        assertEquals(Priority.HIGH, high.getPriority());
+        assertEquals(Priority.HIGH, next.getPriority());
+        assertEquals(Integer.valueOf(3), TestSupport.await(next));
+        assertEquals(Priority.NORMAL, Promise.resolved(1).getPriority());
+    }
+}
@@ -0,0 +1,111 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * PromiseCache: 同一个key只加载一次、LRU淘汰、过期、失败不缓存以及调用者独立取消
+ * Created by Alan Yeh on 2017/9/30.
+ */
+public class PromiseCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Promise<String>> pending = new ArrayList<>();
+
+    /// 每次加载都返回一个由测试结算的Promise
+    private final PromiseCallback<String, Promise<String>> deferredLoader = new PromiseCallback<String, Promise<String>>() {
+        @Override
+        public Promise<String> call(String key) {
+            loads.incrementAndGet();
+            Promise<String> promise = TestSupport.pending();
+            pending.add(promise);
+            return promise;
+        }
+    };
+
+    private final PromiseCallback<String, Promise<String>> loader = new PromiseCallback<String, Promise<String>>() {
+        @Override
+        public Promise<String> call(String key) {
+            loads.incrementAndGet();
+            return Promise.resolved(key + loads.get());
+        }
+    };
+
+    @Test
+    public void concurrentGetsShareOneLoad() throws Exception {
+        PromiseCache<String, String> cache = new PromiseCache<>(10);
+        Promise<String> first = cache.get("a", deferredLoader);
+        Promise<String> second = cache.get("a", deferredLoader);
+        assertEquals(1, loads.get());
+        pending.get(0).settle("A", null);
+        assertEquals("A", TestSupport.await(first));
+        assertEquals("A", TestSupport.await(second));
+        assertEquals(1, cache.stats().getHitCount());
+    }
+
+    @Test
+    public void oneCallerCancellingDoesNotAffectOthers() throws Exception {
+        PromiseCache<String, String> cache = new PromiseCache<>(10);
+        Promise<String> first = cache.get("a", deferredLoader);
+        Promise<String> second = cache.get("a", deferredLoader);
+        first.cancel();
+        assertEquals(Promise.State.Pending, pending.get(0).getState());
+        pending.get(0).settle("A", null);
+        assertEquals("A", TestSupport.await(second));
+    }
+
+    @Test
+    public void allCallersCancellingCancelsLoad() throws Exception {
+        PromiseCache<String, String> cache = new PromiseCache<>(10);
+        cache.get("a", deferredLoader).cancel();
+        assertTrue(pending.get(0).isCancelled());
+        //被取消的结果不缓存
+        TestSupport.await(cache.get("a", loader));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        PromiseCache<String, String> cache = new PromiseCache<>(2);
+        TestSupport.await(cache.get("a", loader));
+        TestSupport.await(cache.get("b", loader));
+        TestSupport.await(cache.get("a", loader));
+        TestSupport.await(cache.get("c", loader));
+        assertNotNull(cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+        assertEquals(1, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    public void expiredEntriesAreReloaded() throws Exception {
+        PromiseCache<String, String> cache = new PromiseCache<String, String>(10).setTtl(30);
+        assertEquals("a1", TestSupport.await(cache.get("a", loader)));
+        assertEquals("a1", TestSupport.await(cache.get("a", loader)));
+        Thread.sleep(60);
+        assertEquals("a2", TestSupport.await(cache.get("a", loader)));
+    }
+
+    @Test
+    public void rejectionsAreNotCachedByDefault() throws Exception {
+        PromiseCache<String, String> cache = new PromiseCache<>(10);
+        PromiseCallback<String, Promise<String>> failing = new PromiseCallback<String, Promise<String>>() {
+            @Override
+            public Promise<String> call(String key) {
+                loads.incrementAndGet();
+                return Promise.rejected(new IllegalStateException("boom"));
+            }
+        };
+        TestSupport.awaitError(cache.get("a", failing));
+        TestSupport.awaitError(cache.get("a", failing));
+        assertEquals(2, loads.get());
+
+        PromiseCache<String, String> caching = new PromiseCache<String, String>(10).setCacheRejections(true);
+        TestSupport.awaitError(caching.get("a", failing));
+        TestSupport.awaitError(caching.get("a", failing));
+        assertEquals(3, loads.get());
+    }
+}
@@ -0,0 +1,188 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 结算的不变式: 只结算一次, 每个监听者恰好收到一次结果, 按注册顺序执行
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public class PromiseSettleTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+
+    @Test
+    public void onlyFirstSettleWins() throws Exception {
+        Promise<Integer> promise = TestSupport.pending();
+        assertTrue(promise.settle(1, null));
+        assertFalse(promise.settle(2, null));
+        assertFalse(promise.settle(null, new IllegalStateException("late")));
+        assertEquals(Promise.State.Fulfilled, promise.getState());
+        assertEquals(Integer.valueOf(1), promise.getResult());
+        assertNull(promise.getError());
+    }
+
+    @Test
+    public void concurrentSettleHasSingleWinner() throws Exception {
+        for (int round = 0; round < ROUNDS; round ++){
+            final Promise<Integer> promise = TestSupport.pending();
+            final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+            final AtomicInteger winners = new AtomicInteger();
+            final AtomicInteger winner = new AtomicInteger(-1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < THREADS; i ++){
+                final int value = i;
+                threads.add(start(new Runnable() {
+                    @Override
+                    public void run() {
+                        awaitBarrier(barrier);
+                        if (promise.settle(value, null)){
+                            winners.incrementAndGet();
+                            winner.set(value);
+                        }
+                    }
+                }));
+            }
+            join(threads);
+            assertEquals(1, winners.get());
+            assertEquals(Integer.valueOf(winner.get()), promise.getResult());
+        }
+    }
+
+    @Test
+    public void listenersRacingSettleAreEachCalledOnce() throws Exception {
+        for (int round = 0; round < ROUNDS; round ++){
+            final Promise<Integer> promise = TestSupport.pending();
+            final CyclicBarrier barrier = new CyclicBarrier(THREADS + 1);
+            final AtomicInteger calls = new AtomicInteger();
+            final AtomicInteger wrongValues = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < THREADS; i ++){
+                threads.add(start(new Runnable() {
+                    @Override
+                    public void run() {
+                        awaitBarrier(barrier);
+                        for (int j = 0; j < 10; j ++){
+                            promise.pipe(new PromiseResolver<Integer>() {
+                                @Override
+                                public void resolve(Integer result, RuntimeException error) {
+                                    calls.incrementAndGet();
+                                    if (result == null || result != 42){
+                                        wrongValues.incrementAndGet();
+                                    }
+                                }
+                            });
+                        }
+                    }
+                }));
+            }
+            threads.add(start(new Runnable() {
+                @Override
+                public void run() {
+                    awaitBarrier(barrier);
+                    promise.settle(42, null);
+                }
+            }));
+            join(threads);
+            assertEquals(THREADS * 10, calls.get());
+            assertEquals(0, wrongValues.get());
+        }
+    }
+
+    @Test
+    public void listenersRunInRegistrationOrder() throws Exception {
+        Promise<String> promise = TestSupport.pending();
+        final List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < 5; i ++){
+            final int index = i;
+            promise.pipe(new PromiseResolver<String>() {
+                @Override
+                public void resolve(String result, RuntimeException error) {
+                    order.add(index);
+                }
+            });
+        }
+        promise.settle("x", null);
+        assertEquals("[0, 1, 2, 3, 4]", order.toString());
+    }
+
+    @Test
+    public void pipeAfterSettleIsCalledImmediately() throws Exception {
+        Promise<String> promise = Promise.rejected(new IllegalArgumentException("bad"));
+        final RuntimeException[] received = new RuntimeException[1];
+        promise.pipe(new PromiseResolver<String>() {
+            @Override
+            public void resolve(String result, RuntimeException error) {
+                received[0] = error;
+            }
+        });
+        assertTrue(received[0] instanceof IllegalArgumentException);
+        assertEquals(Promise.State.Rejected, promise.getState());
+    }
+
+    @Test
+    public void resultAndErrorTogetherAreRejected() throws Exception {
+        Promise<String> promise = TestSupport.pending();
+        try {
+            promise.complete("x", new IllegalStateException());
+            fail("expected IllegalArgumentException");
+        }catch (IllegalArgumentException expected){
+        }
+        assertEquals(Promise.State.Pending, promise.getState());
+    }
+
+    @Test
+    public void completeWithPromiseAdoptsItsResult() throws Exception {
+        Promise<Object> outer = TestSupport.pending();
+        Promise<Object> inner = TestSupport.pending();
+        outer.complete(inner, null);
+        assertEquals(Promise.State.Pending, outer.getState());
+        inner.settle("inner", null);
+        assertEquals("inner", outer.getResult());
+    }
+
+    @Test
+    public void thenChainDeliversOnDefaultScheduler() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] onScheduler = new boolean[1];
+        Promise<Integer> chain = Promise.resolved(1).then(new PromiseCallback<Integer, Integer>() {
+            @Override
+            public Integer call(Integer arg) {
+                onScheduler[0] = Promise.getDefaultScheduler().isCurrentThread();
+                latch.countDown();
+                return arg + 1;
+            }
+        });
+        TestSupport.await(latch);
+        assertEquals(Integer.valueOf(2), TestSupport.await(chain));
+        assertTrue(onScheduler[0]);
+    }
+
+    private static Thread start(Runnable runnable){
+        Thread thread = new Thread(runnable);
+        thread.start();
+        return thread;
+    }
+
+    private static void join(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads){
+            thread.join(TestSupport.TIMEOUT_MILLIS);
+            assertFalse("thread did not finish", thread.isAlive());
+        }
+    }
+
+    private static void awaitBarrier(CyclicBarrier barrier){
+        try {
+            barrier.await();
+        }catch (Exception ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+}
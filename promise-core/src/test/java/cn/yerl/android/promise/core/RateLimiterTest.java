@@ -0,0 +1,78 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * RateLimiter: 空闲之后的突发数量、等待令牌以及限流的调度器
+ * Created by Alan Yeh on 2017/10/11.
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void idleLimiterAllowsExactlyBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter(20).setBurst(3);
+        Thread.sleep(300);
+        int acquired = 0;
+        while (limiter.tryAcquire()){
+            acquired ++;
+        }
+        assertEquals(3, acquired);
+    }
+
+    @Test
+    public void acquireWaitsForNextPermit() throws Exception {
+        RateLimiter limiter = new RateLimiter(10);
+        TestSupport.await(limiter.acquire());
+        long start = System.nanoTime();
+        TestSupport.await(limiter.acquire());
+        assertTrue((System.nanoTime() - start) / 1000000 >= 80);
+    }
+
+    @Test
+    public void cancelledAcquireStopsWaiting() throws Exception {
+        RateLimiter limiter = new RateLimiter(1);
+        TestSupport.await(limiter.acquire());
+        Promise<Void> waiting = limiter.acquire();
+        assertTrue(waiting.cancel());
+        assertTrue(waiting.isCancelled());
+    }
+
+    @Test
+    public void limitReusesWrapperForSameScheduler(){
+        RateLimiter limiter = new RateLimiter(10);
+        Scheduler scheduler = Schedulers.immediate();
+        Scheduler limited = limiter.limit(scheduler);
+        assertSame(limited, limiter.limit(scheduler));
+        assertFalse(limited.isCurrentThread());
+    }
+
+    @Test
+    public void thenAsyncRateLimitedOverloadsRun() throws Exception {
+        RateLimiter limiter = new RateLimiter(1000).setBurst(10);
+        final CountDownLatch latch = new CountDownLatch(2);
+        Promise.resolved(1).thenAsyncRateLimited(limiter, new PromiseVoidReturnCallback<Integer>() {
+            @Override
+            public void call(Integer arg) {
+                latch.countDown();
+            }
+        });
+        Promise.resolved(1).thenAsyncRateLimited(limiter, new PromiseVoidArgVoidReturnCallback() {
+            @Override
+            public void call() {
+                latch.countDown();
+            }
+        });
+        Promise<Integer> resolver = Promise.resolved(1).thenAsyncRateLimited(limiter, new PromiseCallbackWithResolver<Integer, Integer>() {
+            @Override
+            public void call(Integer arg, PromiseResolver<Integer> resolver) {
+                resolver.resolve(arg + 1, null);
+            }
+        });
+        TestSupport.await(latch);
+        assertEquals(Integer.valueOf(2), TestSupport.await(resolver));
+    }
+}
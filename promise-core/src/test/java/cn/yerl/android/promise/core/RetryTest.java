@@ -0,0 +1,123 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.retry: 重试直到成功、达到次数后放弃、等待时间按倍数增长以及取消之后不再重试
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public class RetryTest {
+    private static PromiseVoidArgCallback<Promise<String>> failTimes(final AtomicInteger calls, final int failures){
+        return new PromiseVoidArgCallback<Promise<String>>() {
+            @Override
+            public Promise<String> call() {
+                if (calls.incrementAndGet() <= failures){
+                    return Promise.rejected(new IllegalStateException("fail " + calls.get()));
+                }
+                return Promise.resolved("ok");
+            }
+        };
+    }
+
+    @Test
+    public void retriesUntilSuccess() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy().setMaxAttempts(5).setInitialDelay(1).setJitter(false);
+        assertEquals("ok", TestSupport.await(Promise.retry(policy, failTimes(calls, 2))));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy().setMaxAttempts(3).setInitialDelay(1).setJitter(false);
+        RuntimeException error = TestSupport.awaitError(Promise.retry(policy, failTimes(calls, 10)));
+        assertEquals("fail 3", error.getMessage());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void retryOnFiltersErrors() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy().setMaxAttempts(5).setInitialDelay(1)
+                .setRetryOn(new PromiseCallback<RuntimeException, Boolean>() {
+                    @Override
+                    public Boolean call(RuntimeException error) {
+                        return false;
+                    }
+                });
+        TestSupport.awaitError(Promise.retry(policy, failTimes(calls, 10)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void backoffGrowsAndIsCapped(){
+        RetryPolicy policy = new RetryPolicy().setInitialDelay(100).setMultiplier(2).setMaxDelay(300).setJitter(false);
+        assertEquals(100, policy.delayMillis(1));
+        assertEquals(200, policy.delayMillis(2));
+        assertEquals(300, policy.delayMillis(3));
+        assertEquals(300, policy.delayMillis(10));
+
+        policy.setJitter(true);
+        for (int i = 0; i < 100; i ++){
+            long delay = policy.delayMillis(2);
+            assertTrue(delay >= 0 && delay <= 200);
+        }
+    }
+
+    @Test
+    public void waitsBetweenAttempts() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy().setMaxAttempts(3).setInitialDelay(50).setJitter(false);
+        long start = System.nanoTime();
+        TestSupport.await(Promise.retry(policy, failTimes(calls, 2)));
+        //等待50 + 100毫秒
+        assertTrue(System.nanoTime() - start >= 150 * 1000000L);
+    }
+
+    @Test
+    public void cancelStopsRetrying() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicReference<Promise<String>> upstream = new AtomicReference<>();
+        RetryPolicy policy = new RetryPolicy().setMaxAttempts(10).setInitialDelay(1).setJitter(false);
+        Promise<String> retry = Promise.retry(policy, new PromiseVoidArgCallback<Promise<String>>() {
+            @Override
+            public Promise<String> call() {
+                calls.incrementAndGet();
+                Promise<String> promise = TestSupport.pending();
+                upstream.set(promise);
+                return promise;
+            }
+        });
+        long deadline = System.currentTimeMillis() + TestSupport.TIMEOUT_MILLIS;
+        while (upstream.get() == null && System.currentTimeMillis() < deadline){
+            Thread.sleep(1);
+        }
+        retry.cancel();
+        //正在执行的上游同时被取消
+        assertTrue(upstream.get().isCancelled());
+        assertTrue(TestSupport.awaitError(retry) instanceof CancellationException);
+        Thread.sleep(50);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void cancelDuringBackoffStopsRetrying() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RetryPolicy policy = new RetryPolicy().setMaxAttempts(10).setInitialDelay(100).setJitter(false);
+        Promise<String> retry = Promise.retry(policy, failTimes(calls, 10));
+        long deadline = System.currentTimeMillis() + TestSupport.TIMEOUT_MILLIS;
+        while (calls.get() == 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(1);
+        }
+        retry.cancel();
+        Thread.sleep(250);
+        assertEquals(1, calls.get());
+    }
+}
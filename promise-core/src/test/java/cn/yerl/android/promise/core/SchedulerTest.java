@@ -0,0 +1,88 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * 调度器: thenOn/errorOn/alwaysOn在指定的调度器上执行, thenCompute/thenIO使用内置线程池, thenDelay回到默认调度器
+ * Created by Alan Yeh on 2017/9/18.
+ */
+public class SchedulerTest {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "test-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Scheduler scheduler = Schedulers.from(executor);
+
+    private static final PromiseCallback<Object, String> threadName = new PromiseCallback<Object, String>() {
+        @Override
+        public String call(Object arg) {
+            return Thread.currentThread().getName();
+        }
+    };
+
+    @After
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void thenOnRunsOnScheduler() throws Exception {
+        assertEquals("test-scheduler", TestSupport.await(Promise.resolved((Object) 1).thenOn(scheduler, threadName)));
+    }
+
+    @Test
+    public void errorOnRunsOnScheduler() throws Exception {
+        Promise<String> promise = Promise.<String>rejected(new IllegalStateException("boom"))
+                .errorOn(scheduler, new PromiseCallback<RuntimeException, String>() {
+                    @Override
+                    public String call(RuntimeException error) {
+                        return Thread.currentThread().getName() + ":" + error.getMessage();
+                    }
+                });
+        assertEquals("test-scheduler:boom", TestSupport.await(promise));
+    }
+
+    @Test
+    public void alwaysOnRunsOnScheduler() throws Exception {
+        Promise<String> promise = Promise.<String>rejected(new IllegalStateException("boom")).alwaysOn(scheduler, threadName);
+        assertEquals("test-scheduler", TestSupport.await(promise));
+    }
+
+    @Test
+    public void immediateRunsOnCallerThread() throws Exception {
+        String caller = Thread.currentThread().getName();
+        assertEquals(caller, TestSupport.await(Promise.resolved((Object) 1).thenOn(Schedulers.immediate(), threadName)));
+    }
+
+    @Test
+    public void computeAndIORunOnBuiltInPools() throws Exception {
+        assertTrue(TestSupport.await(Promise.resolved((Object) 1).thenCompute(threadName)).startsWith("promise-compute-"));
+        assertTrue(TestSupport.await(Promise.resolved((Object) 1).thenIO(threadName)).startsWith("promise-io-"));
+        assertTrue(Schedulers.compute().getPoolSize() > 0);
+        assertTrue(Schedulers.io().getPoolSize() > 0);
+    }
+
+    @Test
+    public void thenDelayRunsOnDefaultScheduler() throws Exception {
+        long start = System.nanoTime();
+        Promise<Boolean> promise = Promise.resolved(1).thenDelay(50, new PromiseCallback<Integer, Boolean>() {
+            @Override
+            public Boolean call(Integer arg) {
+                return Promise.getDefaultScheduler().isCurrentThread();
+            }
+        });
+        assertTrue(TestSupport.await(promise));
+        assertTrue(System.nanoTime() - start >= 50 * 1000000L);
+    }
+}
@@ -0,0 +1,92 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.shutdown: 与execute同时执行时任务不会被拒绝, 默认的事件循环也会停止
+ * Created by Alan Yeh on 2017/10/14.
+ */
+public class ShutdownTest {
+    private static final int THREADS = 4;
+    private static final int TASKS = 2000;
+
+    @Test
+    public void executeRacingShutdownIsNeverRejected() throws Exception {
+        final ThreadPoolScheduler[] schedulers = {Schedulers.async(), Schedulers.compute(), Schedulers.io()};
+        final CountDownLatch done = new CountDownLatch(THREADS * TASKS);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i ++){
+            final int index = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < TASKS; j ++){
+                        try {
+                            schedulers[(index + j) % schedulers.length].execute(task);
+                        }catch (RuntimeException ex){
+                            failure.compareAndSet(null, ex);
+                            done.countDown();
+                        }
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (int i = 0; i < 50; i ++){
+            Promise.shutdown();
+            Thread.sleep(1);
+        }
+        for (Thread thread : threads){
+            thread.join(TestSupport.TIMEOUT_MILLIS);
+        }
+        TestSupport.await(done);
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void shutdownStopsDefaultEventLoop() throws Exception {
+        final AtomicReference<Thread> loop = new AtomicReference<>();
+        final CountDownLatch ran = new CountDownLatch(1);
+        Schedulers.main().execute(new Runnable() {
+            @Override
+            public void run() {
+                loop.set(Thread.currentThread());
+                ran.countDown();
+            }
+        });
+        TestSupport.await(ran);
+
+        Promise.shutdown();
+        loop.get().join(TestSupport.TIMEOUT_MILLIS);
+        assertFalse(loop.get().isAlive());
+
+        //之后再使用会重新创建事件循环
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch again = new CountDownLatch(1);
+        Schedulers.main().execute(new Runnable() {
+            @Override
+            public void run() {
+                calls.set(Schedulers.main().isCurrentThread() ? 1 : -1);
+                again.countDown();
+            }
+        });
+        TestSupport.await(again);
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,118 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Promise.inCompletionOrder: 按结束顺序发出结果, 提前结束或取消时释放还没有结束的Promise
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public class StreamTest {
+
+    @Test
+    public void emitsInCompletionOrderThroughFilterAndMap() throws Exception {
+        List<Promise<Integer>> inputs = pendings(4);
+        Promise<List<String>> list = Promise.inCompletionOrder(inputs)
+                .filter(new PromiseCallback<Integer, Boolean>() {
+                    @Override
+                    public Boolean call(Integer arg) {
+                        return arg % 2 == 0;
+                    }
+                })
+                .map(new PromiseCallback<Integer, String>() {
+                    @Override
+                    public String call(Integer arg) {
+                        return "v" + arg;
+                    }
+                })
+                .toList();
+        inputs.get(2).settle(2, null);
+        inputs.get(1).settle(1, null);
+        inputs.get(0).settle(0, null);
+        inputs.get(3).settle(3, null);
+        assertEquals(Arrays.asList("v2", "v0"), TestSupport.await(list));
+    }
+
+    @Test
+    public void failedInputRejectsStream() throws Exception {
+        List<Promise<Integer>> inputs = pendings(2);
+        Promise<Integer> sum = Promise.inCompletionOrder(inputs).reduce(0, new PromiseReducer<Integer, Integer>() {
+            @Override
+            public Integer call(Integer accumulator, Integer value) {
+                return accumulator + value;
+            }
+        });
+        inputs.get(0).settle(null, new IllegalStateException("boom"));
+        assertTrue(TestSupport.awaitError(sum) instanceof IllegalStateException);
+    }
+
+    @Test
+    public void takeReleasesRemainingInputs() throws Exception {
+        List<Promise<Integer>> inputs = pendings(3);
+        Promise<List<Integer>> list = Promise.inCompletionOrder(inputs).take(1).toList();
+        inputs.get(1).settle(1, null);
+        assertEquals(Collections.singletonList(1), TestSupport.await(list));
+        assertReleased(inputs.get(0));
+        assertReleased(inputs.get(2));
+    }
+
+    @Test
+    public void takeZeroCompletesAndReleasesInputs() throws Exception {
+        List<Promise<Integer>> inputs = pendings(2);
+        Promise<List<Integer>> list = Promise.inCompletionOrder(inputs).take(0).toList();
+        assertEquals(Collections.<Integer>emptyList(), TestSupport.await(list));
+        assertReleased(inputs.get(0));
+        assertReleased(inputs.get(1));
+    }
+
+    @Test
+    public void cancellingConsumerReleasesInputsWithoutWaitingForValues() throws Exception {
+        List<Promise<Integer>> inputs = pendings(2);
+        Promise<Void> forEach = Promise.inCompletionOrder(inputs).forEach(new PromiseVoidReturnCallback<Integer>() {
+            @Override
+            public void call(Integer arg) {
+            }
+        });
+        assertTrue(forEach.cancel());
+        assertReleased(inputs.get(0));
+        assertReleased(inputs.get(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void streamCanOnlyBeConsumedOnce() throws Exception {
+        PromiseStream<Integer> stream = Promise.inCompletionOrder(pendings(1));
+        stream.toList();
+        stream.toList();
+    }
+
+    private static List<Promise<Integer>> pendings(int count){
+        List<Promise<Integer>> promises = new ArrayList<>(count);
+        for (int i = 0; i < count; i ++){
+            promises.add(TestSupport.<Integer>pending());
+        }
+        return promises;
+    }
+
+    /**
+     * 流不再观察input时, 测试自己作为唯一的观察者放弃它, input会被取消;
+     * 流还在观察时, retain与unobserve相互抵消, 不影响input
+     */
+    private static void assertReleased(Promise<Integer> input) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TestSupport.TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline){
+            input.retain();
+            input.unobserve();
+            if (input.isCancelled()){
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("input is still observed by the stream");
+    }
+}
@@ -0,0 +1,80 @@
+package cn.yerl.android.promise.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+
+/**
+ * 测试辅助方法
+ * 等待Promise结束时通过subscribe旁观, 不计入观察者, 不影响被测Promise的取消行为
+ * Created by Alan Yeh on 2017/10/9.
+ */
+final class TestSupport {
+    /// 等待的最长时间
+    static final long TIMEOUT_MILLIS = 5000;
+
+    private TestSupport(){
+    }
+
+    /**
+     * 创建一个由测试直接结算的Promise
+     */
+    static <R> Promise<R> pending(){
+        return new Promise<>(Promise.State.Pending);
+    }
+
+    /**
+     * 等待Promise结束
+     * @return 是否在指定时间内结束
+     */
+    static boolean awaitSettled(Promise<?> promise, long timeoutMillis) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        subscribe(promise, latch);
+        return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 等待Promise成功并返回结果
+     */
+    static <R> R await(Promise<R> promise) throws InterruptedException {
+        if (!awaitSettled(promise, TIMEOUT_MILLIS)){
+            fail("promise did not settle in " + TIMEOUT_MILLIS + "ms");
+        }
+        if (promise.getError() != null){
+            throw new AssertionError(promise.getError());
+        }
+        return promise.getResult();
+    }
+
+    /**
+     * 等待Promise失败并返回错误
+     */
+    static RuntimeException awaitError(Promise<?> promise) throws InterruptedException {
+        if (!awaitSettled(promise, TIMEOUT_MILLIS)){
+            fail("promise did not settle in " + TIMEOUT_MILLIS + "ms");
+        }
+        if (promise.getError() == null){
+            fail("expected rejection but got " + promise.getResult());
+        }
+        return promise.getError();
+    }
+
+    /**
+     * 等待CountDownLatch
+     */
+    static void await(CountDownLatch latch) throws InterruptedException {
+        if (!latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)){
+            fail("latch was not released in " + TIMEOUT_MILLIS + "ms");
+        }
+    }
+
+    private static <R> void subscribe(Promise<R> promise, final CountDownLatch latch){
+        promise.subscribe(new PromiseResolver<R>() {
+            @Override
+            public void resolve(R result, RuntimeException error) {
+                latch.countDown();
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package cn.yerl.android.promise.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * timeout、thenDelay和延迟执行的构造函数
+ * Created by Alan Yeh on 2017/10/9.
+ */
+public class TimeoutTest {
+
+    @Test
+    public void timeoutRejectsPendingPromise() throws Exception {
+        Promise<String> promise = TestSupport.pending();
+        RuntimeException error = TestSupport.awaitError(promise.timeout(20));
+        assertTrue(error instanceof PromiseTimeoutException);
+        assertEquals(20, ((PromiseTimeoutException) error).getTimeoutMillis());
+    }
+
+    @Test
+    public void timeoutUsesFallback() throws Exception {
+        Promise<String> promise = TestSupport.pending();
+        Promise<String> next = promise.timeout(20, new PromiseVoidArgCallback<String>() {
+            @Override
+            public String call() {
+                return "fallback";
+            }
+        });
+        assertEquals("fallback", TestSupport.await(next));
+    }
+
+    @Test
+    public void settledBeforeTimeoutKeepsResult() throws Exception {
+        Promise<String> promise = TestSupport.pending();
+        Promise<String> next = promise.timeout(200);
+        promise.settle("done", null);
+        assertEquals("done", TestSupport.await(next));
+        Thread.sleep(300);
+        assertEquals("done", next.getResult());
+    }
+
+    @Test
+    public void hugeTimeoutDoesNotFire() throws Exception {
+        Promise<String> busy = keepTimerBusy();
+        Promise<String> promise = TestSupport.pending();
+        Promise<String> next = promise.timeout(Long.MAX_VALUE);
+        assertFalse(TestSupport.awaitSettled(next, 200));
+        promise.settle("done", null);
+        assertEquals("done", TestSupport.await(next));
+        busy.cancel();
+    }
+
+    @Test
+    public void hugeDelayDoesNotRunImmediately() throws Exception {
+        Promise<String> busy = keepTimerBusy();
+        Promise<String> promise = new Promise<>(Long.MAX_VALUE, new PromiseVoidArgCallback<String>() {
+            @Override
+            public String call() {
+                return "ran";
+            }
+        });
+        assertFalse(TestSupport.awaitSettled(promise, 200));
+        promise.cancel();
+        busy.cancel();
+    }
+
+    @Test
+    public void thenDelayWaitsBeforeRunning() throws Exception {
+        final long start = System.nanoTime();
+        Promise<Long> next = Promise.resolved(1).thenDelay(50, new PromiseCallback<Integer, Long>() {
+            @Override
+            public Long call(Integer arg) {
+                return (System.nanoTime() - start) / 1000000;
+            }
+        });
+        assertTrue(TestSupport.await(next) >= 40);
+    }
+
+    /**
+     * 让定时器中一直有待执行的任务, 时间轮持续转动, 之后添加的任务按运行中的时间轮计算到期时间
+     */
+    private static Promise<String> keepTimerBusy() throws InterruptedException {
+        Promise<String> busy = TestSupport.<String>pending().timeout(60000);
+        Thread.sleep(50);
+        return busy;
+    }
+}
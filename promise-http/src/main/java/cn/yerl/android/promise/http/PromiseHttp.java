@@ -16,11 +16,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 
 import cn.yerl.android.promise.core.Promise;
 import cn.yerl.android.promise.core.PromiseCallback;
 import cn.yerl.android.promise.core.PromiseCallbackWithResolver;
 import cn.yerl.android.promise.core.PromiseResolver;
+import cn.yerl.android.promise.core.PromiseVoidReturnCallback;
+import cn.yerl.android.promise.core.RateLimiter;
+import cn.yerl.android.promise.core.Schedulers;
 import cn.yerl.android.promise.http.logger.ILogger;
 import cz.msebera.android.httpclient.Header;
 import cz.msebera.android.httpclient.HeaderElement;
@@ -126,6 +130,22 @@ public class PromiseHttp {
         return this;
     }
 
+    private volatile RateLimiter rateLimiter;
+
+    /**
+     * 设置限流器, 所有请求(包括下载)都需要先获取令牌再发出
+     * @param rateLimiter 限流器, 为null时不限流
+     * @return PromiseHttp
+     */
+    public PromiseHttp setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
     private HttpClient httpClient;
 
     private PromiseHttp(){
@@ -192,12 +212,24 @@ public class PromiseHttp {
      * @return Promise with PromiseResponse
      */
     public Promise<PromiseResponse> execute(final PromiseRequest request){
-        return new Promise<>(new PromiseCallbackWithResolver<Object, PromiseResponse>() {
+        Promise<PromiseResponse> promise = new Promise<>(new PromiseCallbackWithResolver<Object, PromiseResponse>() {
             @Override
             public void call(Object arg, PromiseResolver resolver) {
-                request.handler = _execute(request, getTextHandler(request, resolver));
+                if (request.isCancelled()){
+                    resolver.resolve(null, new CancellationException("request was cancelled"));
+                    return;
+                }
+                send(request, getTextHandler(request, resolver));
+            }
+        });
+        //Promise被取消时(包括下游取消后向上传递), 同时取消网络请求
+        promise.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                request.cancel();
             }
-        }).alwaysAsync(new PromiseCallback<Object, PromiseResponse>() {
+        });
+        return promise.alwaysAsync(new PromiseCallback<Object, PromiseResponse>() {
             @Override
             public PromiseResponse call(Object arg) {
                 for (ILogger logger : loggers){
@@ -225,12 +257,24 @@ public class PromiseHttp {
      * @return Promise with PromiseResponse
      */
     public Promise<PromiseResponse> download(final PromiseRequest request){
-        return new Promise<>(new PromiseCallbackWithResolver<Object, PromiseResponse>() {
+        Promise<PromiseResponse> promise = new Promise<>(new PromiseCallbackWithResolver<Object, PromiseResponse>() {
             @Override
             public void call(Object arg, PromiseResolver resolver) {
-                request.handler = _execute(request, getDownloadHandler(request, resolver));
+                if (request.isCancelled()){
+                    resolver.resolve(null, new CancellationException("request was cancelled"));
+                    return;
+                }
+                send(request, getDownloadHandler(request, resolver));
+            }
+        });
+        //Promise被取消时(包括下游取消后向上传递), 同时取消网络请求
+        promise.onCancel(new Runnable() {
+            @Override
+            public void run() {
+                request.cancel();
             }
-        }).alwaysAsync(new PromiseCallback<Object, PromiseResponse>() {
+        });
+        return promise.alwaysAsync(new PromiseCallback<Object, PromiseResponse>() {
             @Override
             public PromiseResponse call(Object arg) {
                 for (ILogger logger : loggers){
@@ -249,6 +293,41 @@ public class PromiseHttp {
         });
     }
 
+    /*
+     * 获取限流器的令牌之后发出请求
+     * 等待令牌时不占用线程, 等待期间被取消的请求不会发出, 同时取消定时器中的等待
+     */
+    private void send(final PromiseRequest request, final ResponseHandlerInterface handler){
+        RateLimiter limiter = this.rateLimiter;
+        if (limiter == null){
+            sendNow(request, handler);
+            return;
+        }
+        Promise<Void> permit = limiter.acquire();
+        request.permit = permit;
+        //在设置permit之前已经被取消了
+        if (request.isCancelled()){
+            permit.cancel();
+        }
+        permit.thenOn(Schedulers.io(), new PromiseVoidReturnCallback<Void>() {
+            @Override
+            public void call(Void arg) {
+                request.permit = null;
+                if (!request.isCancelled()){
+                    sendNow(request, handler);
+                }
+            }
+        });
+    }
+
+    private void sendNow(PromiseRequest request, ResponseHandlerInterface handler){
+        request.handler = _execute(request, handler);
+        //发出请求的同时被取消了
+        if (request.isCancelled()){
+            request.cancel();
+        }
+    }
+
     /*
      * 真正执行请求的地方
      */
@@ -64,7 +64,10 @@ public class PromiseRequest implements Serializable {
     private String urlString;
     private String encoding = "UTF-8";
     final private Date createTime;
-    RequestHandle handler;
+    volatile RequestHandle handler;
+    /// 正在等待的限流令牌, 取消请求时同时放弃等待
+    volatile Promise<Void> permit;
+    private volatile boolean cancelled;
 
     public PromiseRequest(String url, Method method){
         this.urlString = url;
@@ -393,13 +396,28 @@ public class PromiseRequest implements Serializable {
 
     /**
      * 取消请求
+     * 请求还没有发出时也可以取消, 之后不会再发出请求
      */
     public void cancel(){
-        if (!handler.isCancelled() && !handler.isFinished()){
+        this.cancelled = true;
+        Promise<Void> permit = this.permit;
+        if (permit != null){
+            permit.cancel();
+        }
+        RequestHandle handler = this.handler;
+        if (handler != null && !handler.isCancelled() && !handler.isFinished()){
             handler.cancel(true);
         }
     }
 
+    /**
+     * 是否已被取消
+     * @return 是否已被取消
+     */
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
     /**
      * 获取Http Method
      * @return Method